@@ -0,0 +1,74 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.network.SerializedMessage;
+
+/**
+ * Compares broadcasting a serialized message to serializing the state for each client. Serializing once and writing
+ * the bytes to every client should cost about one serialization plus a copy per client. Not part of the tests, run it
+ * with its main method.
+ * 
+ * @author group17
+ */
+public class BroadcastBenchmark {
+	private static final int	CLIENTS	= 16;
+	private static final int	ROUNDS	= 200;
+
+	public static void main(String[] args) throws Exception {
+		GameState gs = new GameController().getGameState();
+		ByteArrayOutputStream[] clients = new ByteArrayOutputStream[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			clients[i] = new ByteArrayOutputStream();
+		}
+
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++) {
+			for (ByteArrayOutputStream client : clients) {
+				client.reset();
+				ObjectOutputStream out = new ObjectOutputStream(client);
+				out.writeObject(gs);
+				out.flush();
+			}
+		}
+		long perClient = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++) {
+			SerializedMessage message = new SerializedMessage(gs);
+			for (ByteArrayOutputStream client : clients) {
+				client.reset();
+				message.writeTo(client);
+			}
+		}
+		long once = System.nanoTime() - start;
+
+		System.out.println("Broadcast to " + CLIENTS + " clients, " + ROUNDS + " rounds: serialize per client "
+				+ perClient / 1000000 + " ms, serialize once " + once / 1000000 + " ms");
+		System.exit(0);
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import se.chalmers.touchdeck.network.ConnectionExecutor;
+
+/**
+ * Compares the memory used for each open connection, which keeps its thread waiting for input. Before there were two
+ * platform threads per player, now there is one from the executor. Virtual threads are only measured on JVMs that
+ * have them. Not part of the tests, as it starts a thousand threads; run it with its main method.
+ * 
+ * @author group17
+ */
+public class ConnectionMemoryBenchmark {
+	private static final int	CONNECTIONS	= 500;
+
+	public static void main(String[] args) throws Exception {
+		// Warm up, the first threads started also grow the memory of the JVM itself
+		measure(null, ConnectionExecutor.platformThreads(0), 1);
+		measure("two platform threads", ConnectionExecutor.platformThreads(0), 2);
+		measure("platform thread", ConnectionExecutor.platformThreads(0), 1);
+		measure("platform thread, 128 kB stack", ConnectionExecutor.platformThreads(128 * 1024), 1);
+		ConnectionExecutor virtual = ConnectionExecutor.virtualThreads();
+		if (virtual != null) {
+			measure("virtual thread", virtual, 1);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Starts tasks that wait like a connection handler does, and prints the memory used per connection.
+	 * 
+	 * @param kind The kind of threads, or null to not print the result
+	 * @param executor The executor to run the tasks on
+	 * @param tasksPerConnection The number of tasks each connection needs
+	 */
+	private static void measure(String kind, ConnectionExecutor executor, int tasksPerConnection) throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(CONNECTIONS * tasksPerConnection);
+		System.gc();
+		long before = usedMemory();
+		for (int i = 0; i < CONNECTIONS * tasksPerConnection; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// Done
+					}
+				}
+			}, "connection " + i);
+		}
+		if (!started.await(30, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("The tasks did not start");
+		}
+		long after = usedMemory();
+		release.countDown();
+		if (kind != null) {
+			System.out.println("Memory per connection, " + kind + ": " + (after - before) / CONNECTIONS / 1024 + " kB");
+		}
+		// Let the threads finish before the next measurement
+		Thread.sleep(200);
+	}
+
+	/**
+	 * @return The resident memory of the process on Linux, where thread stacks are counted, otherwise the heap in use
+	 */
+	private static long usedMemory() throws IOException {
+		File status = new File("/proc/self/status");
+		if (status.exists()) {
+			BufferedReader in = new BufferedReader(new FileReader(status));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("VmRSS:")) {
+						return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+}
@@ -21,15 +21,26 @@
 
 package se.chalmers.touchdeck.test.game.controller;
 
+import java.io.ObjectInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+
 import junit.framework.TestCase;
 import se.chalmers.touchdeck.game.server.Card;
 import se.chalmers.touchdeck.game.server.GameController;
 import se.chalmers.touchdeck.game.server.GameState;
 import se.chalmers.touchdeck.game.server.Operation;
 import se.chalmers.touchdeck.game.server.Pile;
+import se.chalmers.touchdeck.game.server.Session;
+import se.chalmers.touchdeck.game.server.SessionInfo;
+import se.chalmers.touchdeck.game.server.StateDelta;
 import se.chalmers.touchdeck.game.server.Operation.Op;
 import se.chalmers.touchdeck.misc.Constant;
 import se.chalmers.touchdeck.misc.enums.Face;
+import se.chalmers.touchdeck.network.IpFinder;
 
 /**
  * Tests the gamecontroller class
@@ -37,21 +48,34 @@ import se.chalmers.touchdeck.misc.enums.Face;
  * @author group17
  */
 public class GameControllerTest extends TestCase {
-	private static GameState		gs;
 	private final GameController	gc				= new GameController();
 	private static final int		MID_OF_TABLE	= Constant.MidOfTable;
+	private static final String		OTHER_CLIENT	= "127.0.0.2";
 
 	@Override
 	protected void setUp() throws Exception {
 		super.setUp();
-		gs = gc.getGameState();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// The game listens on the network, stop it before the next test
+		gc.close();
+		super.tearDown();
+	}
+
+	/**
+	 * @return The latest version of the state, a state is never changed once published
+	 */
+	private GameState state() {
+		return gc.getGameState();
 	}
 
 	/**
 	 * Test the creation of the gamecontroller and deck
 	 */
 	public void testCreate() {
-		Pile p = gs.getPiles().get(MID_OF_TABLE);
+		Pile p = state().getPiles().get(MID_OF_TABLE);
 		assertEquals(52, p.getSize());
 	}
 
@@ -59,14 +83,14 @@ public class GameControllerTest extends TestCase {
 	 * Test flipping a card in a pile
 	 */
 	public void testFlip() {
-		Card c1 = gs.getPiles().get(MID_OF_TABLE).getCard(42);
+		Card c1 = state().getPiles().get(MID_OF_TABLE).getCard(42);
 		Face f1 = c1.getFaceState();
 		gc.performOperation(new Operation(Op.flip, MID_OF_TABLE, c1));
-		Card c2 = gs.getPiles().get(MID_OF_TABLE).getCard(42);
+		Card c2 = state().getPiles().get(MID_OF_TABLE).getCard(42);
 		Face f2 = c2.getFaceState();
 		assertEquals(false, f1.equals(f2));
 		gc.performOperation(new Operation(Op.flip, MID_OF_TABLE, c1));
-		Face f3 = gs.getPiles().get(MID_OF_TABLE).getCard(42).getFaceState();
+		Face f3 = state().getPiles().get(MID_OF_TABLE).getCard(42).getFaceState();
 		assertEquals(true, f1.equals(f3));
 	}
 
@@ -76,21 +100,320 @@ public class GameControllerTest extends TestCase {
 	public void testMove() {
 		gc.performOperation(new Operation(Op.create, 5, "NewPile1"));
 		gc.performOperation(new Operation(Op.create, 15, "NewPile2"));
-		assertEquals(0, gs.getPiles().get(15).getSize());
-		Card c1 = gs.getPiles().get(MID_OF_TABLE).getCard(27);
+		assertEquals(0, state().getPiles().get(15).getSize());
+		Card c1 = state().getPiles().get(MID_OF_TABLE).getCard(27);
 
 		gc.performOperation(new Operation(Op.move, MID_OF_TABLE, 15, c1));
 
-		assertEquals(1, gs.getPiles().get(15).getSize());
+		assertEquals(1, state().getPiles().get(15).getSize());
 		gc.performOperation(new Operation(Op.move, 15, 15, c1));
-		assertEquals(1, gs.getPiles().get(15).getSize());
+		assertEquals(1, state().getPiles().get(15).getSize());
 
 		gc.performOperation(new Operation(Op.move, 15, 5, c1));
-		assertEquals(0, gs.getPiles().get(15).getSize());
-		assertEquals(1, gs.getPiles().get(5).getSize());
+		assertEquals(0, state().getPiles().get(15).getSize());
+		assertEquals(1, state().getPiles().get(5).getSize());
 
-		Card c2 = gs.getPiles().get(5).getCard(0);
+		Card c2 = state().getPiles().get(5).getCard(0);
 
 		assertEquals(c1, c2);
 	}
+
+	/**
+	 * Test that the version only changes when an operation is performed
+	 */
+	public void testVersion() {
+		int v = state().getVersion();
+		gc.performOperation(new Operation(Op.create, 5, "NewPile1"));
+		assertEquals(v + 1, state().getVersion());
+		gc.performOperation(new Operation(Op.create, 5, "NewPile2")); // Occupied, nothing happens
+		assertEquals(v + 1, state().getVersion());
+	}
+
+	/**
+	 * Test bringing an old state up to date with a delta
+	 */
+	public void testApplyDelta() {
+		GameState old = state().applyDelta(new StateDelta(state(), state().getVersion(), new BitSet()));
+		gc.performOperation(new Operation(Op.create, 5, "NewPile1"));
+
+		BitSet changed = new BitSet();
+		changed.set(5);
+		GameState updated = old.applyDelta(new StateDelta(state(), old.getVersion(), changed));
+		assertEquals(null, old.getPiles().get(5));
+		assertEquals("NewPile1", updated.getPiles().get(5).getName());
+		assertTrue(updated.hasPileNamed("NewPile1"));
+		assertEquals(state().getVersion(), updated.getVersion());
+	}
+
+	/**
+	 * Test dealing cards round-robin in a single update
+	 */
+	public void testDeal() {
+		gc.performOperation(new Operation(Op.create, 1, "Hand1"));
+		gc.performOperation(new Operation(Op.create, 2, "Hand2"));
+		Card first = state().getPiles().get(MID_OF_TABLE).getCard(0);
+		Card second = state().getPiles().get(MID_OF_TABLE).getCard(1);
+		int v = state().getVersion();
+
+		ArrayList<Integer> targets = new ArrayList<Integer>();
+		targets.add(1);
+		targets.add(2);
+		targets.add(7); // No pile there, skipped
+		gc.performOperation(new Operation(Op.deal, MID_OF_TABLE, targets, 9));
+
+		assertEquals(v + 1, state().getVersion());
+		assertEquals(43, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(5, state().getPiles().get(1).getSize());
+		assertEquals(4, state().getPiles().get(2).getSize());
+		assertEquals(first, state().getPiles().get(1).getCard(4));
+		assertEquals(second, state().getPiles().get(2).getCard(3));
+
+		// Runs out of cards
+		gc.performOperation(new Operation(Op.deal, MID_OF_TABLE, targets, 100));
+		assertEquals(0, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(27, state().getPiles().get(1).getSize());
+		assertEquals(25, state().getPiles().get(2).getSize());
+	}
+
+	/**
+	 * Test that a batch is performed as one update, or not at all
+	 */
+	public void testBatch() {
+		Card c1 = state().getPiles().get(MID_OF_TABLE).getCard(0);
+		int v = state().getVersion();
+
+		ArrayList<Operation> ops = new ArrayList<Operation>();
+		ops.add(new Operation(Op.create, 3, "Batch"));
+		ops.add(new Operation(Op.flip, MID_OF_TABLE, c1));
+		ops.add(new Operation(Op.move, MID_OF_TABLE, 3, c1));
+		gc.performOperation(new Operation(Op.batch, ops));
+		assertEquals(v + 1, state().getVersion());
+		assertEquals(51, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(Face.up, state().getPiles().get(3).getCard(0).getFaceState());
+
+		// The last move fails since the card is not there anymore, nothing should change
+		ops = new ArrayList<Operation>();
+		ops.add(new Operation(Op.create, 4, "Rolled back"));
+		ops.add(new Operation(Op.shuffle, MID_OF_TABLE));
+		ops.add(new Operation(Op.move, MID_OF_TABLE, 3, c1));
+		Card top = state().getPiles().get(MID_OF_TABLE).getCard(0);
+		gc.performOperation(new Operation(Op.batch, ops));
+		assertEquals(v + 1, state().getVersion());
+		assertEquals(null, state().getPiles().get(4));
+		assertNull(gc.findPile("Rolled back"));
+		assertEquals(top, state().getPiles().get(MID_OF_TABLE).getCard(0));
+		assertEquals(1, state().getPiles().get(3).getSize());
+	}
+
+	/**
+	 * Test gathering all cards in one pile, leaving piles protected by others alone
+	 */
+	public void testGather() {
+		gc.performOperation(new Operation(Op.create, 1, "A"));
+		gc.performOperation(new Operation(Op.create, 2, "B"));
+		gc.performOperation(new Operation(Op.create, 3, "C"));
+		ArrayList<Integer> targets = new ArrayList<Integer>();
+		targets.add(1);
+		targets.add(2);
+		gc.performOperation(new Operation(Op.deal, MID_OF_TABLE, targets, 10));
+		Operation connect = new Operation(Op.connect);
+		connect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(connect);
+		Operation protect = new Operation(Op.protect, 2);
+		protect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(protect);
+
+		gc.performOperation(new Operation(Op.gather, 3));
+		assertEquals(47, state().getPiles().get(3).getSize());
+		assertEquals(0, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(0, state().getPiles().get(1).getSize());
+		assertEquals(5, state().getPiles().get(2).getSize());
+	}
+
+	/**
+	 * Test that the piles protected by a client are released when it disconnects
+	 */
+	public void testDisconnectReleasesPiles() {
+		Operation connect = new Operation(Op.connect);
+		connect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(connect);
+		Operation protect = new Operation(Op.protect, MID_OF_TABLE);
+		protect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(protect);
+		assertTrue(state().getPiles().get(MID_OF_TABLE).getOwner() != Constant.PileHasNoOwner);
+		// Others are not allowed to touch the pile
+		gc.performOperation(new Operation(Op.shuffle, MID_OF_TABLE));
+		assertEquals(52, state().getPiles().get(MID_OF_TABLE).getSize());
+		gc.performOperation(new Operation(Op.pileMove, MID_OF_TABLE, 5, null));
+		assertNull(state().getPiles().get(5));
+
+		Operation disconnect = new Operation(Op.disconnect);
+		disconnect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(disconnect);
+		assertEquals(Constant.PileHasNoOwner, state().getPiles().get(MID_OF_TABLE).getOwner());
+	}
+
+	/**
+	 * Test that a published state is left as it was by later operations, sharing the piles that did not change
+	 */
+	public void testPublishedStateUnchanged() {
+		gc.performOperation(new Operation(Op.create, 1, "A"));
+		gc.performOperation(new Operation(Op.create, 2, "B"));
+		GameState before = state();
+		Card top = before.getPiles().get(MID_OF_TABLE).getCard(0);
+		gc.performOperation(new Operation(Op.move, MID_OF_TABLE, 1, top));
+
+		assertEquals(52, before.getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(0, before.getPiles().get(1).getSize());
+		assertEquals(51, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(1, state().getPiles().get(1).getSize());
+		assertSame(before.getPiles().get(2), state().getPiles().get(2));
+
+		// An operation that is not performed leaves the table as it was published
+		gc.performOperation(new Operation(Op.move, MID_OF_TABLE, 2, top));
+		assertEquals(51, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(0, state().getPiles().get(2).getSize());
+	}
+
+	/**
+	 * Test undoing and redoing operations, each as a single update
+	 */
+	public void testUndoRedo() {
+		gc.performOperation(new Operation(Op.create, 1, "A"));
+		Card top = state().getPiles().get(MID_OF_TABLE).getCard(0);
+		gc.performOperation(new Operation(Op.move, MID_OF_TABLE, 1, top));
+		GameState moved = state();
+
+		gc.performOperation(new Operation(Op.undo));
+		assertEquals(moved.getVersion() + 1, state().getVersion());
+		assertEquals(52, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(0, state().getPiles().get(1).getSize());
+
+		gc.performOperation(new Operation(Op.undo));
+		assertNull(state().getPiles().get(1));
+		assertNull(gc.findPile("A"));
+
+		gc.performOperation(new Operation(Op.redo));
+		gc.performOperation(new Operation(Op.redo));
+		assertSame(moved.getPiles().get(1), state().getPiles().get(1));
+		assertEquals(Integer.valueOf(1), gc.findPile("A"));
+
+		// Nothing more to redo, the version stays the same
+		int v = state().getVersion();
+		gc.performOperation(new Operation(Op.redo));
+		assertEquals(v, state().getVersion());
+
+		// A new operation can not be redone past
+		gc.performOperation(new Operation(Op.undo));
+		gc.performOperation(new Operation(Op.shuffle, MID_OF_TABLE));
+		v = state().getVersion();
+		gc.performOperation(new Operation(Op.redo));
+		assertEquals(v, state().getVersion());
+	}
+
+	/**
+	 * Test that a version with piles protected by a client that has left can be undone to, and that the piles are
+	 * unprotected when it is
+	 */
+	public void testUndoAfterOwnerLeft() {
+		gc.performOperation(new Operation(Op.create, 1, "A"));
+		Operation connect = new Operation(Op.connect);
+		connect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(connect);
+		Operation protect = new Operation(Op.protect, MID_OF_TABLE);
+		protect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(protect);
+		Operation move = new Operation(Op.move, MID_OF_TABLE, 1, state().getPiles().get(MID_OF_TABLE).getCard(0));
+		move.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(move);
+		assertEquals(51, state().getPiles().get(MID_OF_TABLE).getSize());
+
+		// Others may not undo past the protected pile while its owner is in the game
+		int v = state().getVersion();
+		gc.performOperation(new Operation(Op.undo));
+		assertEquals(v, state().getVersion());
+
+		Operation disconnect = new Operation(Op.disconnect);
+		disconnect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(disconnect);
+		gc.performOperation(new Operation(Op.undo));
+		assertEquals(52, state().getPiles().get(MID_OF_TABLE).getSize());
+		assertEquals(0, state().getPiles().get(1).getSize());
+		assertEquals(Constant.PileHasNoOwner, state().getPiles().get(MID_OF_TABLE).getOwner());
+	}
+
+	/**
+	 * Test that clients are only sent the top card of the piles they are not looking at, and that the cards of a
+	 * protected pile are only shown to its owner
+	 */
+	public void testProjection() {
+		GameState summary = state().projectFor(Constant.PileHasNoOwner, -1);
+		Pile deck = summary.getPiles().get(MID_OF_TABLE);
+		assertEquals(52, deck.getSize());
+		assertEquals(1, deck.getCards().size());
+		assertEquals(state().getPiles().get(MID_OF_TABLE).getCard(0), deck.getCard(0));
+		assertFalse(deck.isComplete());
+		assertSame(state(), state().projectFor(Constant.PileHasNoOwner, MID_OF_TABLE));
+
+		Operation connect = new Operation(Op.connect);
+		connect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(connect);
+		Operation protect = new Operation(Op.protect, MID_OF_TABLE);
+		protect.setIpAddr(OTHER_CLIENT);
+		gc.performOperation(protect);
+		int owner = state().getPiles().get(MID_OF_TABLE).getOwner();
+
+		assertSame(state(), state().projectFor(owner, MID_OF_TABLE));
+		GameState theirs = state().projectFor(Constant.PileHasNoOwner, MID_OF_TABLE);
+		Pile hidden = theirs.getPiles().get(MID_OF_TABLE);
+		assertEquals(52, hidden.getSize());
+		assertEquals(owner, hidden.getOwner());
+		assertTrue(hidden.getCards().isEmpty());
+		assertEquals(state().getVersion(), theirs.getVersion());
+	}
+
+	/**
+	 * Test finding a hosted table by its handle, until the host leaves
+	 */
+	public void testHandle() {
+		int handle = gc.getHandle();
+		assertTrue(handle != 0);
+		assertEquals(handle, gc.getHandle());
+		assertSame(gc, GameController.getHosted(handle));
+
+		Operation disconnect = new Operation(Op.disconnect);
+		disconnect.setIpAddr(IpFinder.LOOP_BACK);
+		gc.performOperation(disconnect);
+		assertNull(GameController.getHosted(handle));
+	}
+
+	/**
+	 * Test that the updates of a burst of operations reach the other clients following on each other, however many
+	 * versions each of them holds. How long updates are held back is tested in CoalesceWindowTest.
+	 */
+	public void testCoalesce() throws Exception {
+		ServerSocket server = new ServerSocket(0);
+		Socket client = new Socket(InetAddress.getByName(IpFinder.LOOP_BACK), server.getLocalPort());
+		client.setSoTimeout(5000);
+		Socket socket = server.accept();
+		gc.sessionConnected(new Session(1, 2, OTHER_CLIENT), socket);
+		int version = ((SessionInfo) new ObjectInputStream(client.getInputStream()).readObject()).getState()
+				.getVersion();
+
+		int ops = 20;
+		for (int i = 0; i < ops; i++) {
+			gc.performOperation(new Operation(Op.shuffle, MID_OF_TABLE));
+		}
+		int last = state().getVersion();
+		assertEquals(version + ops, last);
+		while (version < last) {
+			StateDelta delta = (StateDelta) new ObjectInputStream(client.getInputStream()).readObject();
+			assertEquals(version, delta.getFromVersion());
+			assertTrue(delta.getPiles().containsKey(MID_OF_TABLE));
+			version = delta.getToVersion();
+		}
+		client.close();
+		socket.close();
+		server.close();
+	}
 }
@@ -0,0 +1,138 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.game.controller;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.Card;
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.GameReplay;
+import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.game.server.Operation;
+import se.chalmers.touchdeck.game.server.Pile;
+import se.chalmers.touchdeck.game.server.Operation.Op;
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * Tests recording a game and replaying it
+ * 
+ * @author group17
+ */
+public class GameReplayTest extends TestCase {
+	private static final int	MID_OF_TABLE	= Constant.MidOfTable;
+	private File				file;
+	private GameController		gc;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("replay", Constant.RecordingSuffix);
+		gc = new GameController();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		// The game listens on the network, stop it before the next test
+		gc.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Checks that two states have the same piles with the same cards facing the same way
+	 */
+	private static void assertSameGame(GameState expected, GameState actual) {
+		List<Pile> piles = expected.getPiles();
+		for (int i = 0; i < piles.size(); i++) {
+			Pile p = piles.get(i);
+			Pile q = actual.getPiles().get(i);
+			if (p == null) {
+				assertNull(q);
+				continue;
+			}
+			assertEquals(p.getName(), q.getName());
+			assertEquals(p.getSize(), q.getSize());
+			for (int j = 0; j < p.getSize(); j++) {
+				Card c = p.getCard(j);
+				assertEquals(c, q.getCard(j));
+				assertEquals(c.getFaceState(), q.getCard(j).getFaceState());
+			}
+		}
+	}
+
+	/**
+	 * Test that a replay ends up in the same game, shuffles included, and that seeking stops at the given time
+	 */
+	public void testReplay() throws Exception {
+		GameState start = gc.getGameState();
+		gc.startRecording(file);
+		gc.performOperation(new Operation(Op.create, 1, "A"));
+		gc.performOperation(new Operation(Op.shuffle, MID_OF_TABLE));
+		Card top = gc.getGameState().getPiles().get(MID_OF_TABLE).getCard(0);
+		gc.performOperation(new Operation(Op.flip, MID_OF_TABLE, top));
+		gc.performOperation(new Operation(Op.move, MID_OF_TABLE, 1, top));
+		gc.performOperation(new Operation(Op.create, 2, "B"));
+		gc.performOperation(new Operation(Op.undo));
+		gc.stopRecording();
+
+		GameReplay replay = new GameReplay(file);
+		assertEquals(6, replay.getOperations());
+		assertEquals(1, replay.getKeyframes());
+		assertSameGame(gc.getGameState(), replay.replayAll().getGameState());
+		assertSameGame(gc.getGameState(), replay.seek(replay.getDuration()).getGameState());
+		assertSameGame(start, replay.seek(-1).getGameState());
+
+		// The replayed game goes on with the same undo history
+		GameController replayed = replay.replayAll();
+		gc.performOperation(new Operation(Op.undo));
+		replayed.performOperation(new Operation(Op.undo));
+		assertSameGame(gc.getGameState(), replayed.getGameState());
+		replay.close();
+	}
+
+	/**
+	 * Test that a client resuming a session that is gone is replayed as the new user it became, so that the piles it
+	 * protects have the same owner in the replay
+	 */
+	public void testReplayResumeAsConnect() throws Exception {
+		gc.startRecording(file);
+		Operation connect = new Operation(Op.connect);
+		connect.setIpAddr("127.0.0.2");
+		gc.performOperation(connect);
+		Operation resume = new Operation(Op.resume);
+		resume.setIpAddr("127.0.0.3");
+		resume.setSessionToken(42);
+		gc.performOperation(resume);
+		Operation protect = new Operation(Op.protect, MID_OF_TABLE);
+		protect.setIpAddr("127.0.0.3");
+		gc.performOperation(protect);
+		gc.stopRecording();
+		int owner = gc.getGameState().getPiles().get(MID_OF_TABLE).getOwner();
+		assertTrue(owner != Constant.PileHasNoOwner);
+
+		GameReplay replay = new GameReplay(file);
+		assertEquals(3, replay.getOperations());
+		assertEquals(owner, replay.replayAll().getGameState().getPiles().get(MID_OF_TABLE).getOwner());
+		replay.close();
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.game.controller;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.ServerConfig;
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * Tests the ServerConfig class
+ * 
+ * @author group17
+ */
+public class ServerConfigTest extends TestCase {
+
+	/**
+	 * Test the defaults and reading the options
+	 */
+	public void testParse() {
+		ServerConfig config = ServerConfig.parse(new String[0]);
+		assertEquals(Constant.GameControllerPort, config.getPort());
+		assertEquals(1, config.getTables());
+		assertEquals(Constant.DefaultTableName, config.getName());
+		assertEquals(0, config.getStackSize());
+		assertEquals(Constant.OpRate, config.getOpRate());
+		assertEquals(Constant.OpBurst, config.getOpBurst());
+
+		config = ServerConfig.parse(new String[] { "--port", "5000", "--tables", "3", "--name", "Poker", "--stackKb",
+				"128", "--opRate", "5", "--opBurst", "10" });
+		assertEquals(5000, config.getPort());
+		assertEquals(3, config.getTables());
+		assertEquals("Poker", config.getName());
+		assertEquals(128 * 1024, config.getStackSize());
+		assertEquals(5, config.getOpRate());
+		assertEquals(10, config.getOpBurst());
+	}
+
+	/**
+	 * Test that bad options are refused
+	 */
+	public void testBadOptions() {
+		String[][] bad = { { "--port" }, { "port", "1" }, { "--port", "x" }, { "--port", "70000" },
+				{ "--port", "65535", "--tables", "2" }, { "--config", "/nonexistent" },
+				{ "--opRate", "0" } };
+		for (String[] args : bad) {
+			try {
+				ServerConfig.parse(args);
+				fail("Accepted " + args[0]);
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.misc;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.misc.metrics.Histogram;
+
+/**
+ * Tests the Histogram class
+ * 
+ * @author group17
+ */
+public class HistogramTest extends TestCase {
+
+	/**
+	 * Tests that small values are exact and large values are within the precision of the buckets
+	 */
+	public void testPercentiles() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getValueAtPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			h.record(i);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000, h.getMax());
+		assertEquals(500.5, h.getMean(), 0.001);
+		long p50 = h.getValueAtPercentile(50);
+		assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+		assertEquals(1000, h.getValueAtPercentile(100));
+
+		h.reset();
+		h.record(3);
+		h.record(5);
+		assertEquals(3, h.getValueAtPercentile(50));
+		assertEquals(5, h.getValueAtPercentile(99));
+	}
+
+	/**
+	 * Tests recording values at the edges of the range
+	 */
+	public void testExtremes() {
+		Histogram h = new Histogram();
+		h.record(-1);
+		h.record(Long.MAX_VALUE);
+		assertEquals(0, h.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, h.getValueAtPercentile(100));
+	}
+}
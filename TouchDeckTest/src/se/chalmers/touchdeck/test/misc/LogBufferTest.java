@@ -0,0 +1,89 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.misc;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.misc.log.LogBuffer;
+import se.chalmers.touchdeck.misc.log.LogSink;
+import se.chalmers.touchdeck.misc.log.Logger;
+
+/**
+ * Tests the LogBuffer class
+ * 
+ * @author group17
+ */
+public class LogBufferTest extends TestCase {
+	private final ArrayList<String>	mWritten	= new ArrayList<String>();
+
+	private final LogSink			mSink		= new LogSink() {
+													@Override
+													public void write(int level, String tag, String message) {
+														synchronized (mWritten) {
+															mWritten.add(tag + ":" + message);
+															mWritten.notifyAll();
+														}
+													}
+												};
+
+	/**
+	 * Tests that messages are put together and written in order by the background thread
+	 */
+	public void testWrite() throws InterruptedException {
+		LogBuffer buffer = new LogBuffer(16, mSink);
+		Thread thread = new Thread(buffer);
+		thread.start();
+		buffer.add(Logger.DEBUG, "tag", "a", null, null);
+		buffer.add(Logger.DEBUG, "tag", "b ", 1, null);
+		buffer.add(Logger.ERROR, "tag", "c ", 2, "x");
+		synchronized (mWritten) {
+			long end = System.currentTimeMillis() + 2000;
+			while (mWritten.size() < 3 && System.currentTimeMillis() < end) {
+				mWritten.wait(100);
+			}
+		}
+		thread.interrupt();
+		assertEquals(3, mWritten.size());
+		assertEquals("tag:a", mWritten.get(0));
+		assertEquals("tag:b 1", mWritten.get(1));
+		assertEquals("tag:c 2x", mWritten.get(2));
+	}
+
+	/**
+	 * Tests that only the latest messages are kept and dumped
+	 */
+	public void testDump() {
+		LogBuffer buffer = new LogBuffer(4, mSink);
+		for (int i = 0; i < 10; i++) {
+			buffer.add(Logger.DEBUG, "tag", "m", i, null);
+		}
+		StringWriter sw = new StringWriter();
+		buffer.dump(new PrintWriter(sw));
+		String[] lines = sw.toString().trim().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0].endsWith("D/tag: m6"));
+		assertTrue(lines[3].endsWith("D/tag: m9"));
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.misc;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.misc.metrics.RoundTripTime;
+
+/**
+ * Tests the RoundTripTime class
+ * 
+ * @author group17
+ */
+public class RoundTripTimeTest extends TestCase {
+
+	/**
+	 * Tests that the average follows the samples slowly and the jitter settles when they are steady
+	 */
+	public void testSample() {
+		RoundTripTime rtt = new RoundTripTime();
+		assertEquals(-1, rtt.getRtt());
+		assertEquals("samples=0", rtt.toString());
+
+		rtt.sample(8000);
+		assertEquals(8000, rtt.getRtt());
+		assertEquals(4000, rtt.getJitter());
+
+		// A spike moves the average an eighth of the way
+		rtt.sample(16000);
+		assertEquals(9000, rtt.getRtt());
+		assertEquals(5000, rtt.getJitter());
+
+		for (int i = 0; i < 100; i++) {
+			rtt.sample(9000);
+		}
+		assertEquals(9000, rtt.getRtt());
+		assertTrue(rtt.getJitter() < 10);
+		assertTrue(rtt.toString().startsWith("samples=102 rtt=9000"));
+	}
+}
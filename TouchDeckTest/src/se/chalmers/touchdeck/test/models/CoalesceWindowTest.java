@@ -0,0 +1,57 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.models;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.CoalesceWindow;
+
+/**
+ * Tests the CoalesceWindow class
+ * 
+ * @author group17
+ */
+public class CoalesceWindowTest extends TestCase {
+	private static final long	Milli	= 1000000L;
+	private static final long	Max		= 8 * Milli;
+
+	/**
+	 * Test that updates are held back while they come close together, for the longest window or a quarter of the
+	 * round-trip time if that is shorter, and not once they come further apart than the window
+	 */
+	public void testNext() {
+		CoalesceWindow window = new CoalesceWindow(Max);
+		long now = 0;
+		// Nothing is known about how far apart the updates come
+		assertEquals(0, window.next(now, -1));
+		now += Milli;
+		assertEquals(Max, window.next(now, -1));
+		now += Milli;
+		assertEquals(Milli, window.next(now, 4000));
+
+		// Pauses count as twice the window, and it takes a few of them to stop holding back
+		now += 100 * Milli;
+		assertEquals(Max, window.next(now, -1)); // Gap 1 + (16 - 1) / 4 = 4.75 ms
+		now += 100 * Milli;
+		assertEquals(Max, window.next(now, -1)); // Gap 4.75 + (16 - 4.75) / 4 = 7.5625 ms
+		now += 100 * Milli;
+		assertEquals(0, window.next(now, -1)); // Gap 7.5625 + (16 - 7.5625) / 4 = 9.671875 ms
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.models;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.PileNameRegistry;
+
+/**
+ * Tests the PileNameRegistry class
+ * 
+ * @author group17
+ */
+public class PileNameRegistryTest extends TestCase {
+	private final PileNameRegistry	names	= new PileNameRegistry();
+
+	/**
+	 * Tests that taken names are replaced by the lowest free default name
+	 */
+	public void testClaim() {
+		assertEquals("deck", names.claim("deck", 11));
+		assertEquals("Pile 1", names.claim("deck", 3));
+		assertEquals("Pile 2", names.getDefaultPileName());
+		assertEquals("Pile 2", names.claim("Pile 1", 4));
+		assertEquals("Pile 3", names.getDefaultPileName());
+		assertEquals(Integer.valueOf(3), names.positionOf("Pile 1"));
+		assertNull(names.positionOf("Pile 3"));
+	}
+
+	/**
+	 * Tests that released default numbers are handed out again
+	 */
+	public void testRelease() {
+		names.claim("Pile 1", 0);
+		names.claim("Pile 2", 1);
+		names.claim("Pile 3", 2);
+		names.release("Pile 2");
+		assertFalse(names.contains("Pile 2"));
+		assertEquals(2, names.getDefaultPileNo());
+		assertEquals("Pile 2", names.claim("Pile 1", 5));
+		assertEquals(4, names.getDefaultPileNo());
+
+		// Names that only look like default names do not take a number
+		names.claim("Pile 04", 6);
+		names.claim("Pile 4x", 7);
+		assertEquals(4, names.getDefaultPileNo());
+	}
+
+	/**
+	 * Tests that moved piles are found at their new position
+	 */
+	public void testMove() {
+		names.claim("A", 0);
+		names.move("A", 9);
+		names.move("B", 9); // No such pile, ignored
+		assertEquals(Integer.valueOf(9), names.positionOf("A"));
+		assertNull(names.positionOf("B"));
+	}
+}
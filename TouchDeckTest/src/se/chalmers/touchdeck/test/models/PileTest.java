@@ -21,9 +21,15 @@
 
 package se.chalmers.touchdeck.test.models;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import junit.framework.TestCase;
 import se.chalmers.touchdeck.game.server.Card;
 import se.chalmers.touchdeck.game.server.Pile;
+import se.chalmers.touchdeck.misc.enums.Face;
 import se.chalmers.touchdeck.misc.enums.Rank;
 import se.chalmers.touchdeck.misc.enums.Suit;
 
@@ -97,4 +103,109 @@ public class PileTest extends TestCase {
 		p1.setName("name2"); // Change name.
 		assertEquals("name2", p1.getName());
 	}
+
+	/**
+	 * Test putting a pile on top of another, the order of the cards should be the same as when moving them one by one
+	 */
+	public void testAddPile() {
+		Pile from = new Pile();
+		Pile to = new Pile();
+		from.addCard(new Card(Suit.clubs, Rank.two));
+		from.addCard(new Card(Suit.clubs, Rank.three));
+		to.addCard(new Card(Suit.hearts, Rank.ace));
+
+		Pile expected = new Pile();
+		expected.addCard(new Card(Suit.hearts, Rank.ace));
+		for (int i = from.getSize(); i > 0; i--) {
+			expected.addCard(from.getCard(i - 1));
+		}
+
+		to.addPile(from);
+		assertEquals(0, from.getSize());
+		assertEquals(expected.getCards(), to.getCards());
+
+		to.addPile(to);
+		assertEquals(3, to.getSize());
+	}
+
+	/**
+	 * Test facing and flipping cards through the pile
+	 */
+	public void testFaces() {
+		Pile p = new Pile();
+		Card c1 = new Card(Suit.spades, Rank.ace, true);
+		Card c2 = new Card(Suit.spades, Rank.two);
+		p.addCard(c1);
+		p.addCard(c2);
+		assertEquals(Face.down, p.getCard(0).getFaceState());
+		assertEquals(Face.up, p.getCard(1).getFaceState());
+
+		p.setFace(Face.up);
+		assertEquals(Face.up, p.getCard(0).getFaceState());
+		assertEquals(Face.up, p.getCard(1).getFaceState());
+
+		assertTrue(p.flipCard(c2));
+		assertEquals(Face.down, p.getCard(0).getFaceState());
+		assertFalse(p.flipCard(new Card(Suit.hearts, Rank.ace)));
+
+		// The cards themselves are not changed, and keep their face when taken or moved
+		assertEquals(Face.up, c1.getFaceState());
+		Pile other = new Pile();
+		other.addCard(new Card(Suit.clubs, Rank.king));
+		other.addPile(p);
+		assertEquals(Face.down, other.getCard(0).getFaceState());
+		assertEquals(Face.up, other.getCard(1).getFaceState());
+		assertEquals(Face.down, other.getCard(2).getFaceState());
+		assertEquals(Face.down, other.takeCard(0).getFaceState());
+	}
+
+	/**
+	 * Test that a pile keeps its cards and faces when sent over the network
+	 */
+	public void testSerialize() throws Exception {
+		Pile p = new Pile("name");
+		for (Rank rank : Rank.values()) {
+			p.addCard(new Card(Suit.diamonds, rank));
+		}
+		p.flipCard(new Card(Suit.diamonds, Rank.queen));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(p);
+		out.close();
+		Pile read = (Pile) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals("name", read.getName());
+		assertEquals(p.getCards(), read.getCards());
+		for (int i = 0; i < p.getSize(); i++) {
+			assertEquals(p.getCard(i).getFaceState(), read.getCard(i).getFaceState());
+		}
+	}
+
+	/**
+	 * Test that a hidden pile only tells how many cards it has
+	 */
+	public void testHidden() {
+		Pile p = new Pile("name");
+		p.addCard(new Card(Suit.spades, Rank.ace));
+		p.addCard(new Card(Suit.spades, Rank.king));
+		assertFalse(p.isHiddenFrom(1));
+		p.setOwner(1);
+		assertFalse(p.isHiddenFrom(1));
+		assertTrue(p.isHiddenFrom(2));
+
+		Pile hidden = p.hidden();
+		assertEquals("name", hidden.getName());
+		assertEquals(1, hidden.getOwner());
+		assertEquals(2, hidden.getSize());
+		assertTrue(hidden.getCards().isEmpty());
+		assertEquals(2, new Pile(hidden).getSize());
+
+		Pile summary = p.summary();
+		assertEquals(2, summary.getSize());
+		assertEquals(p.getCard(0), summary.getCard(0));
+		assertEquals(1, summary.getCards().size());
+		assertSame(summary, summary.summary());
+		assertSame(p, p.viewedBy(1, true));
+	}
 }
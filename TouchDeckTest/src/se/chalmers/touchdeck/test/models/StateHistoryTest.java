@@ -0,0 +1,72 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.models;
+
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.StateHistory;
+
+/**
+ * Tests the StateHistory class
+ * 
+ * @author group17
+ */
+public class StateHistoryTest extends TestCase {
+
+	/**
+	 * @param pile A pile position
+	 * @return A set holding only the position
+	 */
+	private static BitSet changed(int pile) {
+		BitSet changed = new BitSet();
+		changed.set(pile);
+		return changed;
+	}
+
+	/**
+	 * Test that the changes since a remembered version are gathered, and that forgotten versions are not answered
+	 */
+	public void testChangedSince() {
+		StateHistory history = new StateHistory(2);
+		history.record(1, changed(3));
+		history.record(2, changed(5));
+		assertEquals(changed(5), history.changedSince(1));
+		BitSet both = changed(3);
+		both.set(5);
+		assertEquals(both, history.changedSince(0));
+		history.record(3, changed(7));
+		assertNull(history.changedSince(0));
+		assertTrue(history.changedSince(3).isEmpty());
+	}
+
+	/**
+	 * Test that a history started at a version, e.g. that of a keyframe, does not answer for the versions before it
+	 */
+	public void testStartAt() {
+		StateHistory history = new StateHistory(10);
+		history.startAt(20);
+		history.record(21, changed(4));
+		assertEquals(changed(4), history.changedSince(20));
+		assertNull(history.changedSince(19));
+		assertNull(history.changedSince(15));
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.models;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.Card;
+import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.game.server.Pile;
+import se.chalmers.touchdeck.game.server.UndoHistory;
+import se.chalmers.touchdeck.misc.enums.Rank;
+import se.chalmers.touchdeck.misc.enums.Suit;
+
+/**
+ * Tests the UndoHistory class
+ * 
+ * @author group17
+ */
+public class UndoHistoryTest extends TestCase {
+
+	/**
+	 * Creates a state with a single pile
+	 * 
+	 * @param cards The number of cards in the pile
+	 * @return The state
+	 */
+	private static GameState stateWith(int cards) {
+		Pile p = new Pile("p");
+		for (int i = 0; i < cards; i++) {
+			p.addCard(new Card(Suit.hearts, Rank.values()[i % Rank.values().length]));
+		}
+		ArrayList<Pile> piles = new ArrayList<Pile>();
+		piles.add(p);
+		return new GameState(piles);
+	}
+
+	/**
+	 * Tests that only the given number of steps are remembered
+	 */
+	public void testDepth() {
+		UndoHistory history = new UndoHistory(3, 1000);
+		GameState[] states = new GameState[5];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = stateWith(i);
+		}
+		for (int i = 1; i < states.length; i++) {
+			history.record(states[i - 1], states[i]);
+		}
+		assertEquals(3, history.getUndoSize());
+		assertSame(states[3], history.undo(states[4]));
+		assertSame(states[2], history.undo(states[3]));
+		assertSame(states[1], history.undo(states[2]));
+		assertNull(history.undo(states[1]));
+
+		assertSame(states[2], history.redo(states[1]));
+		assertSame(states[1], history.peekUndo());
+	}
+
+	/**
+	 * Tests that the oldest steps are forgotten when they hold too many cards
+	 */
+	public void testMaxCards() {
+		UndoHistory history = new UndoHistory(10, 25);
+		GameState a = stateWith(10);
+		GameState b = stateWith(10);
+		GameState c = stateWith(10);
+		GameState d = stateWith(10);
+		history.record(a, b);
+		history.record(b, c);
+		assertEquals(22, history.getCards());
+		history.record(c, d);
+		assertEquals(2, history.getUndoSize());
+		assertEquals(22, history.getCards());
+		assertSame(c, history.peekUndo());
+
+		// Unchanged piles cost nothing
+		history.record(d, new GameState(d.getPiles()));
+		assertEquals(3, history.getUndoSize());
+		assertEquals(22, history.getCards());
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.network;
+
+import java.io.ObjectInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.network.ClientWriter;
+import se.chalmers.touchdeck.network.IpFinder;
+import se.chalmers.touchdeck.network.SerializedMessage;
+
+/**
+ * Tests the ClientWriter class
+ * 
+ * @author group17
+ */
+public class ClientWriterTest extends TestCase {
+	private ServerSocket	server;
+	private Socket			client;
+	private Socket			socket;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = new ServerSocket(0);
+		client = new Socket(InetAddress.getByName(IpFinder.LOOP_BACK), server.getLocalPort());
+		client.setSoTimeout(5000);
+		socket = server.accept();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.close();
+		socket.close();
+		server.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Test that the messages reach the client in the order they were queued
+	 */
+	public void testOrder() throws Exception {
+		ClientWriter writer = new ClientWriter(socket, null);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(writer.offer(new SerializedMessage(Integer.valueOf(i))));
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), new ObjectInputStream(client.getInputStream()).readObject());
+		}
+	}
+
+	/**
+	 * Test that a client that does not read is dropped once too many messages wait for it, without holding up the
+	 * caller
+	 */
+	public void testDropsClientTooFarBehind() throws Exception {
+		ClientWriter writer = new ClientWriter(socket, null);
+		// Large enough to fill the socket buffers, so that the writer gets stuck
+		SerializedMessage message = new SerializedMessage(new byte[100000]);
+		int offered = 0;
+		while (writer.offer(message)) {
+			offered++;
+			assertTrue(offered < 10 * Constant.MaxQueuedMessages);
+		}
+		assertTrue(offered >= Constant.MaxQueuedMessages);
+		assertTrue(socket.isClosed());
+		assertFalse(writer.offer(message));
+	}
+}
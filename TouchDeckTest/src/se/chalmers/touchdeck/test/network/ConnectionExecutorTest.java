@@ -0,0 +1,110 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.network;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.network.ConnectionExecutor;
+
+/**
+ * Tests the ConnectionExecutor class
+ * 
+ * @author group17
+ */
+public class ConnectionExecutorTest extends TestCase {
+
+	/**
+	 * Test that a pool runs no more tasks at once than it has threads, turns away the tasks that come when all of them
+	 * are busy, and takes new tasks again when threads are free
+	 */
+	public void testBoundedPool() throws Exception {
+		ConnectionExecutor pool = ConnectionExecutor.boundedPool(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch done = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					done.countDown();
+				}
+			}, "task " + i);
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}, "task 2");
+			fail("A task was taken although all the threads were busy");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		// A thread that has finished its task takes a new one as soon as it is waiting for it
+		final CountDownLatch ranAgain = new CountDownLatch(1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			try {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						ranAgain.countDown();
+					}
+				}, "task 3");
+				break;
+			} catch (RejectedExecutionException e) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.yield();
+			}
+		}
+		assertTrue(ranAgain.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test that the platform threads are named after their tasks
+	 */
+	public void testPlatformThreads() throws Exception {
+		final String[] name = new String[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		ConnectionExecutor.platformThreads(128 * 1024).execute(new Runnable() {
+			@Override
+			public void run() {
+				name[0] = Thread.currentThread().getName();
+				done.countDown();
+			}
+		}, "handler");
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("handler", name[0]);
+	}
+}
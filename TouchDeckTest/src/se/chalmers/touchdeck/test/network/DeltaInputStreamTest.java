@@ -0,0 +1,68 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.game.server.StateDelta;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.network.DeltaInputStream;
+import se.chalmers.touchdeck.network.SerializedMessage;
+
+/**
+ * Tests the DeltaInputStream class
+ * 
+ * @author group17
+ */
+public class DeltaInputStreamTest extends TestCase {
+
+	/**
+	 * Test that an update is read, and that anything else is refused
+	 */
+	public void testRead() throws Exception {
+		GameController gc = new GameController();
+		GameState gs = gc.getGameState();
+		gc.close();
+		BitSet changed = new BitSet();
+		changed.set(0, Constant.NumOfPiles);
+		StateDelta delta = (StateDelta) read(new StateDelta(gs, 0, changed));
+		assertEquals(52, delta.getPiles().get(Constant.MidOfTable).getSize());
+
+		try {
+			read(gs);
+			fail("Read a whole state");
+		} catch (InvalidClassException e) {
+			// Expected
+		}
+	}
+
+	private static Object read(Serializable s) throws Exception {
+		byte[] bytes = new SerializedMessage(s).getBytes();
+		return new DeltaInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.test.network;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.Ack;
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.Operation;
+import se.chalmers.touchdeck.game.server.Operation.Op;
+import se.chalmers.touchdeck.game.server.SessionInfo;
+import se.chalmers.touchdeck.game.server.StateDelta;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.network.LocalConnection;
+
+/**
+ * Tests the LocalConnection class
+ * 
+ * @author group17
+ */
+public class LocalConnectionTest extends TestCase implements Observer {
+	private final LinkedBlockingQueue<Object>	updates	= new LinkedBlockingQueue<Object>();
+	private GameController						gc;
+
+	@Override
+	protected void tearDown() throws Exception {
+		// The game listens on the network, stop it before the next test
+		gc.close();
+		super.tearDown();
+	}
+
+	@Override
+	public void update(Observable obs, Object param) {
+		updates.add(param);
+	}
+
+	/**
+	 * Test that the gui of the host is handed the published states themselves, without going through a socket
+	 */
+	public void testConnect() throws Exception {
+		gc = new GameController();
+		LocalConnection connection = new LocalConnection(gc, this);
+		connection.send(new Operation(Op.connect));
+		SessionInfo info = (SessionInfo) updates.poll(5, TimeUnit.SECONDS);
+		assertNotNull(info);
+		assertSame(gc.getGameState(), info.getState());
+
+		// Updates are not summarized for the host, its gui already shares the cards with the game
+		connection.send(new Operation(Op.shuffle, Constant.MidOfTable));
+		StateDelta delta = (StateDelta) updates.poll(5, TimeUnit.SECONDS);
+		assertNotNull(delta);
+		assertEquals(info.getState().getVersion(), delta.getFromVersion());
+		assertSame(gc.getGameState().getPiles().get(Constant.MidOfTable), delta.getPiles().get(Constant.MidOfTable));
+		assertEquals(52, delta.getPiles().get(Constant.MidOfTable).getCards().size());
+
+		connection.send(new Operation(Op.disconnect));
+		connection.end();
+		delta = (StateDelta) updates.poll(5, TimeUnit.SECONDS);
+		assertFalse(delta.getHostStillLeft());
+	}
+
+	/**
+	 * Test that numbered operations are answered after their update, with the reason if they were rejected
+	 */
+	public void testAck() throws Exception {
+		gc = new GameController();
+		LocalConnection connection = new LocalConnection(gc, this);
+		connection.send(new Operation(Op.connect));
+		assertTrue(updates.poll(5, TimeUnit.SECONDS) instanceof SessionInfo);
+
+		connection.send(numbered(new Operation(Op.shuffle, Constant.MidOfTable), 1));
+		StateDelta delta = (StateDelta) updates.poll(5, TimeUnit.SECONDS);
+		Ack ack = (Ack) updates.poll(5, TimeUnit.SECONDS);
+		assertEquals(1, ack.getSeq());
+		assertTrue(ack.isApplied());
+		assertEquals(delta.getToVersion(), ack.getVersion());
+
+		// Operations that are not numbered are not answered
+		connection.send(new Operation(Op.create, Constant.MidOfTable, "taken"));
+		connection.send(numbered(new Operation(Op.create, Constant.MidOfTable, "taken"), 2));
+		ack = (Ack) updates.poll(5, TimeUnit.SECONDS);
+		assertEquals(2, ack.getSeq());
+		assertEquals(Ack.Reason.occupied, ack.getReason());
+		assertEquals(delta.getToVersion(), ack.getVersion());
+
+		connection.send(numbered(new Operation(Op.flip, 0), 3));
+		assertEquals(Ack.Reason.noSuchPile, ((Ack) updates.poll(5, TimeUnit.SECONDS)).getReason());
+
+		connection.send(numbered(new Operation(Op.shuffle, Constant.NumOfPiles), 4));
+		assertEquals(Ack.Reason.invalid, ((Ack) updates.poll(5, TimeUnit.SECONDS)).getReason());
+
+		connection.send(numbered(new Operation(Op.redo), 5));
+		assertEquals(Ack.Reason.noEffect, ((Ack) updates.poll(5, TimeUnit.SECONDS)).getReason());
+
+		connection.send(new Operation(Op.disconnect));
+		connection.end();
+	}
+
+	private static Operation numbered(Operation op, int seq) {
+		op.setSeq(seq);
+		return op;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.network.SerializedMessage;
+
+/**
+ * Tests the SerializedMessage class
+ * 
+ * @author group17
+ */
+public class SerializedMessageTest extends TestCase {
+	private static final int	CLIENTS	= 16;
+	private GameState			gs;
+	private GameController		gc;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		gc = new GameController();
+		gs = gc.getGameState();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// The game listens on the network, stop it before the next test
+		gc.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Test that the message reads back as the object it was created from
+	 */
+	public void testRoundTrip() throws Exception {
+		SerializedMessage message = new SerializedMessage(gs);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		message.writeTo(out);
+		assertEquals(message.size(), out.size());
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+		GameState read = (GameState) in.readObject();
+		assertEquals(52, read.getPiles().get(Constant.MidOfTable).getSize());
+		assertEquals(gs.getVersion(), read.getVersion());
+	}
+
+	/**
+	 * Test that every client of a broadcast gets the same bytes, which read back as the state
+	 */
+	public void testBroadcast() throws Exception {
+		SerializedMessage message = new SerializedMessage(gs);
+		ByteArrayOutputStream[] clients = new ByteArrayOutputStream[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			clients[i] = new ByteArrayOutputStream();
+			message.writeTo(clients[i]);
+		}
+		for (ByteArrayOutputStream client : clients) {
+			assertTrue(Arrays.equals(message.getBytes(), client.toByteArray()));
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(client.toByteArray()));
+			assertEquals(gs.getVersion(), ((GameState) in.readObject()).getVersion());
+		}
+	}
+
+	/**
+	 * Test writing the same message more than once
+	 */
+	public void testWriteTwice() throws IOException {
+		SerializedMessage message = new SerializedMessage(gs);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		message.writeTo(out);
+		message.writeTo(out);
+		assertEquals(2 * message.size(), out.size());
+	}
+}
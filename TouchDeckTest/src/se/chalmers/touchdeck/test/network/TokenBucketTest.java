@@ -0,0 +1,58 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.test.network;
+
+import junit.framework.TestCase;
+import se.chalmers.touchdeck.network.TokenBucket;
+
+/**
+ * Tests the TokenBucket class
+ * 
+ * @author group17
+ */
+public class TokenBucketTest extends TestCase {
+	private static final long	Second	= 1000000000L;
+
+	/**
+	 * Test that a burst is let through at once, and then tokens come at the rate
+	 */
+	public void testTake() {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		long now = System.nanoTime();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(bucket.take(now));
+		}
+		assertFalse(bucket.take(now));
+		// The next token comes a tenth of a second later
+		assertFalse(bucket.take(now + Second / 20));
+		now += Second / 10 + 1000;
+		assertTrue(bucket.take(now));
+		assertFalse(bucket.take(now));
+
+		// Refilled, but never beyond the burst
+		now += 10 * Second;
+		for (int i = 0; i < 3; i++) {
+			assertTrue(bucket.take(now));
+		}
+		assertFalse(bucket.take(now));
+	}
+}
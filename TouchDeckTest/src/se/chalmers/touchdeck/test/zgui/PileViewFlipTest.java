@@ -21,7 +21,7 @@
 
 package se.chalmers.touchdeck.test.zgui;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import se.chalmers.touchdeck.R;
 import se.chalmers.touchdeck.game.client.GuiController;
@@ -97,7 +97,7 @@ public class PileViewFlipTest extends ActivityInstrumentationTestCase2<StartScre
 
 	public void testFlipCard() {
 		GameState gs = gc.getGameState();
-		ArrayList<Pile> list = gs.getPiles();
+		List<Pile> list = gs.getPiles();
 		Pile deck = list.get(pilePos);
 		// Must be here for some reason
 		solo = new Solo(getInstrumentation(), pileView);
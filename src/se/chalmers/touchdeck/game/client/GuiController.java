@@ -23,19 +23,35 @@ package se.chalmers.touchdeck.game.client;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import se.chalmers.touchdeck.game.server.Ack;
+import se.chalmers.touchdeck.game.server.GameController;
 import se.chalmers.touchdeck.game.server.GameState;
 import se.chalmers.touchdeck.game.server.Operation;
 import se.chalmers.touchdeck.game.server.Operation.Op;
+import se.chalmers.touchdeck.game.server.Ping;
+import se.chalmers.touchdeck.game.server.SessionInfo;
+import se.chalmers.touchdeck.game.server.StateDelta;
 import se.chalmers.touchdeck.misc.Constant;
 import se.chalmers.touchdeck.misc.enums.TableState;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.misc.metrics.Histogram;
+import se.chalmers.touchdeck.misc.metrics.Metrics;
+import se.chalmers.touchdeck.misc.metrics.RoundTripTime;
 import se.chalmers.touchdeck.network.GuiToGameConnection;
 import se.chalmers.touchdeck.network.GuiUpdater;
+import se.chalmers.touchdeck.network.LocalConnection;
+import se.chalmers.touchdeck.network.MulticastReceiver;
 import android.content.Intent;
-import android.util.Log;
 import android.widget.Toast;
 
 /**
@@ -51,14 +67,28 @@ public class GuiController implements Observer {
 
     private static GuiController sInstance        = null;
 
-    private final int            mGamePort        = Constant.GameControllerPort;
+    private int                  mGamePort        = Constant.GameControllerPort;
     private String               mHostIpAddr;
     private String               mMyIpAddr;
     private GuiUpdater           mGuiUpdater;
+    private MulticastReceiver    mMulticastReceiver;
     private Socket               mGuiToGameSocket;
     private GuiToGameConnection  mGuiToGameConnection;
+    private GameController       mLocalGame;
+    private LocalConnection      mLocalConnection;
     private boolean              mTerminating;
     private boolean              mConnectedToGame = false;
+    private long                 mSessionToken    = 0;
+    private int                  mSessionId       = Constant.PileHasNoOwner;
+    private boolean              mResuming        = false;
+    private boolean              mSyncRequested   = false;
+    private int                  mNextSeq         = 1;
+    private Map<Integer, Long>   mPendingOps      = new LinkedHashMap<Integer, Long>();
+    private Metrics              mMetrics         = new Metrics("client");
+    private Histogram            mAckTimes        = mMetrics.histogram("ops.ackMicros");
+    private RoundTripTime        mRoundTrip       = mMetrics.roundTrip("host.rttMicros");
+    private Timer                mPingTimer;
+    private final Object         mSendLock        = new Object();
 
     /**
      * Get the Guicontroller.
@@ -88,16 +118,37 @@ public class GuiController implements Observer {
     }
 
     /**
-     * Sets up the connections for network play.
+     * Sets the game hosted in this process, which the gui then talks to directly instead of over the network.
+     * 
+     * @param gameController The game
+     */
+    public void setLocalGame(GameController gameController) {
+        mLocalGame = gameController;
+    }
+
+    /**
+     * Sets up the connections for network play. If the game is hosted in this process, the gui is connected to it
+     * directly instead.
      * 
      * @param hostIpAddr The ip address of the host.
      * @param myGameIpAddr The ip address of the client
+     * @param gamePort The port the game listens to
      */
-    public void setupConnections(String hostIpAddr, String myGameIpAddr) {
+    public void setupConnections(String hostIpAddr, String myGameIpAddr, int gamePort) {
         mHostIpAddr = hostIpAddr;
+        mGamePort = gamePort;
         mMyIpAddr = myGameIpAddr;
+        if (mLocalGame != null) {
+            mLocalConnection = new LocalConnection(mLocalGame, this);
+            mLocalConnection.send(new Operation(Op.connect));
+            return;
+        }
         mGuiUpdater = new GuiUpdater(this, Constant.GuiControllerPort);
         new Thread(mGuiUpdater).start();
+        if (Constant.UseMulticast) {
+            mMulticastReceiver = new MulticastReceiver(this);
+            new Thread(mMulticastReceiver).start();
+        }
         mGuiToGameConnection = new GuiToGameConnection(mHostIpAddr, mGamePort, this);
         new Thread(mGuiToGameConnection).start();
     }
@@ -108,35 +159,270 @@ public class GuiController implements Observer {
      * @param op The operation that has been made
      */
     public void sendOperation(Operation op) {
-        if (!mConnectedToGame && !op.getOp().equals(Op.connect)) {
+        if (!mConnectedToGame && !op.getOp().equals(Op.connect) && !op.getOp().equals(Op.resume)) {
             Toast.makeText(mTableView, "Not connected!", Toast.LENGTH_SHORT).show();
             return;
         }
-        ObjectOutputStream out = null;
+        if (op.getOp() != Op.connect && op.getOp() != Op.disconnect && op.getOp() != Op.resume) {
+            track(op);
+        }
+        if (op.getSessionToken() == 0) {
+            // The host finds the session of the operation by its token
+            op.setSessionToken(mSessionToken);
+        }
+        if (mLocalConnection != null) {
+            mLocalConnection.send(op);
+            return;
+        }
         op.setIpAddr(mMyIpAddr);
-        try {
-            out = new ObjectOutputStream(mGuiToGameSocket.getOutputStream());
-            out.writeObject(op);
-            Log.d("SendOp GuC", "Operation written into socket" + op.getOp().toString());
-            out.flush();
-        } catch (IOException e) {
-            Log.e("SendOp GuC", "Error writing operation into socket");
+        if (write(op)) {
+            Logger.d("SendOp GuC", "Operation written into socket ", op.getOp());
+        }
+    }
+
+    /**
+     * Writes a message to the host. Operations from the gui and pings from the timer are written one at a time.
+     * 
+     * @param message The message
+     * @return Whether the message was written
+     */
+    private boolean write(Serializable message) {
+        synchronized (mSendLock) {
+            try {
+                ObjectOutputStream out = new ObjectOutputStream(mGuiToGameSocket.getOutputStream());
+                out.writeObject(message);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                Logger.e("SendOp GuC", "Error writing operation into socket");
+            } catch (NullPointerException e) {
+                Logger.e("SendOp GuC", "No socket to write operation into");
+                return false;
+            }
+        }
+        connectionLost();
+        return false;
+    }
+
+    /**
+     * Starts measuring the round-trip time to the host every PingInterval. Not needed when the game is hosted in this
+     * process.
+     */
+    private void startPinging() {
+        if (mPingTimer != null || mLocalConnection != null) {
+            return;
+        }
+        mPingTimer = new Timer("Ping", true);
+        mPingTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                if (!mResuming) {
+                    write(new Ping(Ping.Kind.request, System.nanoTime(), 0, mSessionToken));
+                }
+            }
+        }, 0, Constant.PingInterval);
+    }
+
+    /**
+     * Handles the answer of the host to a ping: records the round-trip time, shows it, and echoes the time of the host
+     * back so that the host can measure it too.
+     * 
+     * @param ping The answer
+     */
+    private void handlePing(Ping ping) {
+        if (ping.getKind() != Ping.Kind.answer) {
+            return;
+        }
+        mRoundTrip.sample((System.nanoTime() - ping.getClientTime()) / 1000);
+        write(new Ping(Ping.Kind.echo, 0, ping.getHostTime(), mSessionToken));
+        final long rtt = mRoundTrip.getRtt();
+        final long jitter = mRoundTrip.getJitter();
+        if (mTableView != null) {
+            mTableView.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mTableView.showRoundTrip(rtt, jitter);
+                }
+            });
+        }
+    }
+
+    /**
+     * Numbers an operation so that the host answers it with an ack, and remembers when it was sent. If an earlier
+     * operation has not been answered in time its ack or update has been lost, so the missed updates are asked for
+     * rather than sending anything again.
+     * 
+     * @param op The operation about to be sent
+     */
+    private synchronized void track(Operation op) {
+        long now = System.nanoTime();
+        boolean expired = false;
+        Iterator<Long> sent = mPendingOps.values().iterator();
+        while (sent.hasNext() && (now - sent.next()) / 1000000 > Constant.AckTimeout) {
+            sent.remove();
+            expired = true;
+        }
+        op.setSeq(mNextSeq++);
+        mPendingOps.put(op.getSeq(), now);
+        if (expired && op.getOp() != Op.sync) {
+            Logger.e("in GuC", "No answer from the host in time, asking for the missed updates");
+            requestSync();
+        }
+    }
+
+    /**
+     * Handles the answer to an operation, recording how long it took and telling the user if it was rejected.
+     * 
+     * @param ack The answer
+     */
+    private void handleAck(Ack ack) {
+        Long sent = mPendingOps.remove(ack.getSeq());
+        if (sent != null) {
+            mAckTimes.record((System.nanoTime() - sent) / 1000);
+        }
+        if (ack.isApplied()) {
+            return;
         }
+        Logger.d("in GuC", "Operation rejected: ", ack.getReason());
+        final String message;
+        switch (ack.getReason()) {
+        case notAllowed:
+            message = "The pile is protected!";
+            break;
+        case occupied:
+            message = "There is already a pile there!";
+            break;
+        case noSuchPile:
+            message = "The pile is gone!";
+            break;
+        case throttled:
+            message = "Slow down!";
+            break;
+        case busy:
+            message = "The host is busy, try again!";
+            break;
+        default:
+            // The operation had no effect, e.g. another user got to the card first
+            return;
+        }
+        if (mTableView != null) {
+            mTableView.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(mTableView, message, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the operation that resumes the session after the connection to the host has been lost.
+     * 
+     * @return The resume operation
+     */
+    public Operation createResumeOperation() {
+        Operation op = new Operation(Op.resume);
+        op.setSessionToken(mSessionToken);
+        op.setVersion(mGameState.getVersion());
+        return op;
+    }
+
+    /**
+     * Called when the connection to the host has been lost. Sets up a new connection and resumes the session, keeping
+     * the protected piles and only getting the updates that were missed.
+     */
+    public synchronized void connectionLost() {
+        if (mResuming || mGuiUpdater == null || mSessionToken == 0 || mTerminating) {
+            return;
+        }
+        Logger.d("in GuC", "Connection lost, resuming session");
+        mResuming = true;
+        if (mGuiToGameConnection != null) {
+            mGuiToGameConnection.end();
+        }
+        mGuiToGameConnection = new GuiToGameConnection(mHostIpAddr, mGamePort, this, true);
+        mGuiToGameConnection.setAttempts(Constant.ReconnectAttempts);
+        new Thread(mGuiToGameConnection).start();
+    }
+
+    /**
+     * Called when the host could not be reached.
+     */
+    public synchronized void connectionFailed() {
+        mResuming = false;
+        if (mTableView != null) {
+            mTableView.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(mTableView, "Could not reach the host!", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
+
+    /**
+     * Asks the host for the updates that were missed.
+     */
+    private void requestSync() {
+        if (mSyncRequested) {
+            return;
+        }
+        mSyncRequested = true;
+        Operation op = new Operation(Op.sync);
+        op.setVersion(mGameState.getVersion());
+        sendOperation(op);
     }
 
     /**
      * Called when the GuiUpdater gets an update from the gameController.
      * 
-     * @param obs The GuiUpdater that sent the update
-     * @param param The updated gameState
+     * @param obs The GuiUpdater, MulticastReceiver or LocalConnection that sent the update
+     * @param param The updated gameState, the answer to an operation or to a ping
      */
     @Override
-    public void update(Observable obs, Object param) {
-        if (obs instanceof GuiUpdater) {
+    public synchronized void update(Observable obs, Object param) {
+        if (obs instanceof GuiUpdater || obs instanceof MulticastReceiver || obs instanceof LocalConnection) {
             mConnectedToGame = true;
-            Log.d("in GuC observer", "Connected : " + mConnectedToGame);
+            Logger.d("in GuC observer", "Connected : ", mConnectedToGame);
+            if (param instanceof Ack) {
+                handleAck((Ack) param);
+                return;
+            }
+            if (param instanceof Ping) {
+                handlePing((Ping) param);
+                return;
+            }
+            if (param instanceof SessionInfo) {
+                SessionInfo info = (SessionInfo) param;
+                // Operations sent before the connection was lost are not answered
+                mPendingOps.clear();
+                if (mSessionToken == 0 && mMulticastReceiver != null && mGuiToGameSocket != null) {
+                    // Get the updates of this table from the multicast group from now on
+                    mMulticastReceiver.setTable(mGuiToGameSocket.getInetAddress(), info.getTableId());
+                    sendOperation(new Operation(Op.joinMulticast));
+                }
+                mSessionToken = info.getToken();
+                mSessionId = info.getSessionId();
+                mResuming = false;
+                startPinging();
+                param = info.getState() != null ? info.getState() : info.getDelta();
+            }
             // Update the state of the game
-            GameState gs = (GameState) param;
+            GameState gs;
+            if (param instanceof StateDelta) {
+                StateDelta delta = (StateDelta) param;
+                if (delta.getFromVersion() != mGameState.getVersion()) {
+                    // Updates have been missed, ask for them unless this one is old news
+                    if (delta.getToVersion() > mGameState.getVersion()) {
+                        requestSync();
+                    }
+                    return;
+                }
+                gs = mGameState.applyDelta(delta);
+            } else {
+                gs = (GameState) param;
+            }
+            mSyncRequested = false;
             // If the host has left, close the session
             if (!gs.getHostStillLeft()) {
                 mTableView.setTerminate(true);
@@ -149,7 +435,7 @@ public class GuiController implements Observer {
 
             setGameState(gs);
 
-            Log.d("in GuC observer", "New state Received");
+            Logger.d("in GuC observer", "New state Received");
             // Force it to run on the UI-thread
             mTableView.runOnUiThread(new Runnable() {
                 @Override
@@ -201,6 +487,13 @@ public class GuiController implements Observer {
         return mGameState;
     }
 
+    /**
+     * @return The id of this client's session, which marks the piles it has protected
+     */
+    public int getSessionId() {
+        return mSessionId;
+    }
+
     /**
      * @param state The state to set for the TableView
      */
@@ -223,10 +516,18 @@ public class GuiController implements Observer {
             mPileView.finish();
         }
 
+        if (mPingTimer != null) {
+            mPingTimer.cancel();
+            mPingTimer = null;
+        }
         if (mGuiUpdater != null) {
             mGuiUpdater.end(mMyIpAddr);
             mGuiUpdater = null;
         }
+        if (mMulticastReceiver != null) {
+            mMulticastReceiver.end();
+            mMulticastReceiver = null;
+        }
         if (!mTerminating && mConnectedToGame) {
             // If it was the user itself initiating the termination, tell the host
             Operation op = new Operation(Op.disconnect);
@@ -237,9 +538,14 @@ public class GuiController implements Observer {
             mGuiToGameConnection.end();
             mGuiToGameConnection = null;
         }
+        if (mLocalConnection != null) {
+            mLocalConnection.end();
+            mLocalConnection = null;
+        }
+        mMetrics.unregister();
 
         sInstance = null;
-        Log.d("in GuC terminate", "GuiController terminated");
+        Logger.d("in GuC terminate", "GuiController terminated");
     }
 
     /**
@@ -31,12 +31,12 @@ import se.chalmers.touchdeck.game.server.Operation.Op;
 import se.chalmers.touchdeck.game.server.Pile;
 import se.chalmers.touchdeck.misc.Constant;
 import se.chalmers.touchdeck.misc.enums.TableState;
+import se.chalmers.touchdeck.misc.log.Logger;
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Point;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Display;
@@ -64,7 +64,6 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
     private Card                     mCard;
     private final HashSet<Card>      mPeekedCards = new HashSet<Card>();
     private Pile                     mCurrentPile;
-    private String                   mMyGameIp;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -73,11 +72,12 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
         mGuiController = GuiController.getInstance();
 
         mPileId = getIntent().getExtras().getInt(Constant.IntentPileViewPileId);
-        mMyGameIp = getIntent().getExtras().getString(Constant.IntentPileViewIp);
         mCurrentPile = mGuiController.getGameState().getPiles().get(mPileId);
 
         setupButtons();
         mGuiController.setPileView(this);
+        // The table only holds the top card of each pile, ask for the rest of this one
+        mGuiController.sendOperation(new Operation(Op.subscribe, mPileId));
     }
 
     /**
@@ -124,6 +124,7 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
             // Launch the TableView in move state
             mGuiController.setTableState(TableState.move);
             mGuiController.setMoveOp(new Operation(Op.move, mPileId, -1, mCard));
+            mGuiController.sendOperation(new Operation(Op.unsubscribe, mPileId));
             Intent table = new Intent(this, TableView.class);
             // Don't start a new tableView, use the one already running.
             table.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
@@ -169,9 +170,9 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
         if (mCurrentPile == null) {
             pileViewText.setText("No Pile");
             return;
-        } else if (mCurrentPile.getOwner().equals(Constant.PileHasNoOwner)) {
+        } else if (mCurrentPile.getOwner() == Constant.PileHasNoOwner) {
             pileViewText.setText("[" + mCurrentPile.getSize() + "] " + mCurrentPile.getName());
-        } else if (mCurrentPile.getOwner().equals(mMyGameIp)) {
+        } else if (mCurrentPile.getOwner() == mGuiController.getSessionId()) {
             pileViewText.setText("[" + mCurrentPile.getSize() + "] " + mCurrentPile.getName()
                     + " - Protected by you");
         } else {
@@ -180,8 +181,9 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
             return;
         }
 
+        // Until all the cards have arrived only the top card is shown
         LinkedList<Card> cards = mCurrentPile.getCards();
-        for (int i = 0; i < mCurrentPile.getSize(); i++) {
+        for (int i = 0; i < cards.size(); i++) {
 
             Button btn = new Button(this);
             LinearLayout.LayoutParams btnParams = new LinearLayout.LayoutParams(
@@ -238,7 +240,7 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
         try {
             openContextMenu(v);
         } catch (NullPointerException e) {
-            Log.e("PileView", "Could not find View");
+            Logger.e("PileView", "Could not find View");
         }
     }
 
@@ -256,6 +258,7 @@ public class PileView extends Activity implements OnClickListener, OnLongClickLi
 
     @Override
     public void onBackPressed() {
+        mGuiController.sendOperation(new Operation(Op.unsubscribe, mPileId));
         super.onBackPressed();
         finish();
     }
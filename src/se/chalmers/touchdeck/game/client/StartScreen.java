@@ -21,22 +21,28 @@
 
 package se.chalmers.touchdeck.game.client;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
 import se.chalmers.touchdeck.R;
 import se.chalmers.touchdeck.game.client.dialogs.DialogText;
+import se.chalmers.touchdeck.game.client.dialogs.HostListDialog;
 import se.chalmers.touchdeck.game.client.dialogs.JoinGameDialog;
 import se.chalmers.touchdeck.game.server.GameController;
-import se.chalmers.touchdeck.game.server.GameState;
-import se.chalmers.touchdeck.game.server.Pile;
 import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.network.DiscoveredHost;
+import se.chalmers.touchdeck.network.HostFinder;
 import android.app.Activity;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.Toast;
 
 /**
  * Activity for the startup screen of the application, allows the user to choose game mode. For now, only local play is
@@ -50,6 +56,10 @@ public class StartScreen extends Activity implements Observer {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.start_screen);
+        // Debug builds log everything, release builds only from Constant.LogLevel
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            Logger.setLevel(Logger.DEBUG);
+        }
     }
 
     /**
@@ -60,24 +70,50 @@ public class StartScreen extends Activity implements Observer {
      */
     public void createGame(View v) {
         Intent launchGui = new Intent(this, TableView.class);
-        GameController gc = new GameController();
-        launchGui.putExtra(Constant.IntentTableViewState, gc.getGameState());
-        launchGui.putExtra(Constant.IntentTableViewIP, Constant.IntentTableViewHost);
+        GameController gc = new GameController(Build.MODEL);
+        if (Constant.RecordGames) {
+            File recording = new File(getFilesDir(), "table-" + System.currentTimeMillis() + Constant.RecordingSuffix);
+            try {
+                gc.startRecording(recording);
+            } catch (IOException e) {
+                Logger.e("StartScreen", "Could not record the game to ", recording);
+            }
+        }
+        // Only the handle is passed, the table view takes the state from the game itself
+        launchGui.putExtra(Constant.IntentTableViewHandle, gc.getHandle());
         startActivity(launchGui);
     }
 
     /**
-     * Called when the 'join game' - button is pressed. An intent is created and a TableView activity is started. As the
-     * user is not the host, no GameController will be created.
+     * Called when the 'join game' - button is pressed. Searches the local network for games and lets the user choose
+     * one, or enter the ip address of the host if none were found. An intent is then created and a TableView activity
+     * is started. As the user is not the host, no GameController will be created.
      * 
      * @param v The view (button) that is pressed
      */
     public void joinGame(View v) {
-        int id = v.getId();
-        String msg = "Please enter the host IP: ";
-        JoinGameDialog dialog = new JoinGameDialog(this, id, msg);
-        dialog.show(this);
-
+        final int id = v.getId();
+        Toast.makeText(this, "Searching for games...", Toast.LENGTH_SHORT).show();
+        // The search blocks, so keep it off the UI thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final List<DiscoveredHost> hosts = new HostFinder().find();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (hosts.isEmpty()) {
+                            String msg = "No games found, please enter the host IP (and :port if needed): ";
+                            JoinGameDialog dialog = new JoinGameDialog(StartScreen.this, id, msg);
+                            dialog.show(StartScreen.this);
+                        } else {
+                            HostListDialog dialog = new HostListDialog(StartScreen.this, id, hosts);
+                            dialog.show(StartScreen.this);
+                        }
+                    }
+                });
+            }
+        }).start();
     }
 
     /**
@@ -101,21 +137,17 @@ public class StartScreen extends Activity implements Observer {
         if (obs instanceof DialogText) {
             DialogText dt = (DialogText) param;
 
-            if (!JoinGameDialog.validIP(dt.getString())) {
+            String ipAddr = JoinGameDialog.ipOf(dt.getString());
+            int port = JoinGameDialog.portOf(dt.getString());
+            if (!JoinGameDialog.validIP(ipAddr) || port < 0) {
                 // Prompt the user to try again
                 String msg = "Please enter a valid IP: ";
                 JoinGameDialog dialog = new JoinGameDialog(this, dt.getId(), msg);
                 dialog.show(this);
             } else {
                 Intent launchGui = new Intent(this, TableView.class);
-                ArrayList<Pile> emptyPiles = new ArrayList<Pile>();
-                int numButtons = Constant.NumOfPiles;
-                for (int i = 0; i < numButtons; i++) {
-                    emptyPiles.add(null);
-                }
-                launchGui.putExtra(Constant.IntentTableViewState, new GameState(emptyPiles,
-                        new HashSet<String>()));
-                launchGui.putExtra(Constant.IntentTableViewIP, dt.getString());
+                launchGui.putExtra(Constant.IntentTableViewIP, ipAddr);
+                launchGui.putExtra(Constant.IntentTableViewPort, port);
                 startActivity(launchGui);
             }
 
@@ -21,15 +21,16 @@
 
 package se.chalmers.touchdeck.game.client;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Observable;
 import java.util.Observer;
 
 import se.chalmers.touchdeck.R;
+import se.chalmers.touchdeck.game.client.dialogs.DealDialog;
 import se.chalmers.touchdeck.game.client.dialogs.DialogText;
 import se.chalmers.touchdeck.game.client.dialogs.DialogText.Context;
 import se.chalmers.touchdeck.game.client.dialogs.PileNameDialog;
+import se.chalmers.touchdeck.game.server.GameController;
 import se.chalmers.touchdeck.game.server.GameState;
 import se.chalmers.touchdeck.game.server.Operation;
 import se.chalmers.touchdeck.game.server.Operation.Op;
@@ -39,6 +40,8 @@ import se.chalmers.touchdeck.misc.enums.TableState;
 import se.chalmers.touchdeck.network.IpFinder;
 import android.app.Activity;
 import android.content.Intent;
+import android.net.wifi.WifiManager;
+import android.net.wifi.WifiManager.MulticastLock;
 import android.os.Bundle;
 import android.os.Handler;
 import android.view.ContextMenu;
@@ -65,6 +68,7 @@ public class TableView extends Activity implements OnClickListener, Observer {
 
     private TableLayout                   mTableLayout;
     private final ArrayList<LinearLayout> mLayouts       = new ArrayList<LinearLayout>();
+    private final ArrayList<Integer>      mDealTargets   = new ArrayList<Integer>();
     private GuiController                 mGuiController;
 
     private int                           mPileId;
@@ -74,30 +78,54 @@ public class TableView extends Activity implements OnClickListener, Observer {
     private Toast                         mToast;
     private String                        mHostIpAddr;
     private String                        mDisplayIp;
+    private String                        mRoundTrip     = "";
     private String                        mMyGameIp;
     private boolean                       mTerminateMode = false;
     private boolean                       mIsHost        = false;
+    private MulticastLock                 mMulticastLock;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.table_view);
         setupButtons();
-        Serializable s = getIntent().getExtras().getSerializable(Constant.IntentTableViewState);
-        mHostIpAddr = getIntent().getExtras().getString(Constant.IntentTableViewIP);
-        if (mHostIpAddr.equals(Constant.IntentTableViewHost)) {
+        int handle = getIntent().getExtras().getInt(Constant.IntentTableViewHandle);
+        int gamePort = getIntent().getExtras().getInt(Constant.IntentTableViewPort);
+        if (gamePort == 0) {
+            gamePort = Constant.GameControllerPort;
+        }
+        mGuiController = GuiController.getInstance();
+        GameState gs;
+        GameController game = handle == 0 ? null : GameController.getHosted(handle);
+        if (game != null) {
+            // The table is hosted on this device, start from its state and talk to it directly
             mIsHost = true;
             mHostIpAddr = IpFinder.LOOP_BACK;
             mDisplayIp = IpFinder.getMyIp();
             mMyGameIp = IpFinder.LOOP_BACK;
+            gs = game.getGameState();
+            mGuiController.setLocalGame(game);
         } else {
+            // Start from an empty table, the host sends the state as soon as the connection is set up
+            mHostIpAddr = getIntent().getExtras().getString(Constant.IntentTableViewIP);
             mDisplayIp = IpFinder.getMyIp();
             mMyGameIp = IpFinder.getMyIp();
+            ArrayList<Pile> emptyPiles = new ArrayList<Pile>();
+            for (int i = 0; i < Constant.NumOfPiles; i++) {
+                emptyPiles.add(null);
+            }
+            gs = new GameState(emptyPiles);
         }
-        GameState gs = (GameState) s;
 
-        mGuiController = GuiController.getInstance();
-        mGuiController.setupConnections(mHostIpAddr, mMyGameIp);
+        if (Constant.UseMulticast) {
+            // Android drops multicast packets unless asked not to
+            WifiManager wifi = (WifiManager) getApplicationContext().getSystemService(
+                    android.content.Context.WIFI_SERVICE);
+            mMulticastLock = wifi.createMulticastLock("TouchDeck");
+            mMulticastLock.acquire();
+        }
+
+        mGuiController.setupConnections(mHostIpAddr, mMyGameIp, gamePort);
         mGuiController.setGameState(gs);
         mGuiController.setTableView(this);
     }
@@ -132,6 +160,14 @@ public class TableView extends Activity implements OnClickListener, Observer {
             mGuiController.sendOperation(new Operation(Op.restart));
             break;
 
+        case R.id.menu_item_undo:
+            mGuiController.sendOperation(new Operation(Op.undo));
+            break;
+
+        case R.id.menu_item_redo:
+            mGuiController.sendOperation(new Operation(Op.redo));
+            break;
+
         default:
             break;
         }
@@ -164,12 +200,13 @@ public class TableView extends Activity implements OnClickListener, Observer {
         Pile currentPile = mGuiController.getGameState().getPiles().get(mPileId);
 
         if (currentPile != null) {
-            String pileOwner = currentPile.getOwner();
+            int pileOwner = currentPile.getOwner();
+            int me = mGuiController.getSessionId();
 
             // Stops the context menu from inflating if the user should not have
             // access to the pile.
             if (currentPile.getSize() > 0
-                    && (pileOwner.equals(mMyGameIp) || pileOwner.equals(Constant.PileHasNoOwner))) {
+                    && (pileOwner == me || pileOwner == Constant.PileHasNoOwner)) {
                 inflater.inflate(R.menu.pile_menu, menu);
 
                 // Checks whether the pile is protected or not and sets which
@@ -179,10 +216,10 @@ public class TableView extends Activity implements OnClickListener, Observer {
                 MenuItem protectPile = menu.findItem(R.id.menu_item_protect_pile);
                 MenuItem unprotectPile = menu.findItem(R.id.menu_item_unprotect_pile);
 
-                if (pileOwner.equals(Constant.PileHasNoOwner)) {
+                if (pileOwner == Constant.PileHasNoOwner) {
                     protectPile.setVisible(true);
                     unprotectPile.setVisible(false);
-                } else if (pileOwner.equals(mMyGameIp)) {
+                } else if (pileOwner == me) {
                     unprotectPile.setVisible(true);
                     protectPile.setVisible(false);
                 } else {
@@ -190,7 +227,7 @@ public class TableView extends Activity implements OnClickListener, Observer {
                     protectPile.setVisible(false);
                 }
 
-            } else if (pileOwner.equals(mMyGameIp) || pileOwner.equals(Constant.PileHasNoOwner)) {
+            } else if (pileOwner == me || pileOwner == Constant.PileHasNoOwner) {
 
                 inflater.inflate(R.menu.empty_pile_menu, menu);
 
@@ -201,10 +238,10 @@ public class TableView extends Activity implements OnClickListener, Observer {
                 MenuItem protectPile = menu.findItem(R.id.menu_item_protect_empty_pile);
                 MenuItem unprotectPile = menu.findItem(R.id.menu_item_unprotect_empty_pile);
 
-                if (pileOwner.equals(Constant.PileHasNoOwner)) {
+                if (pileOwner == Constant.PileHasNoOwner) {
                     protectPile.setVisible(true);
                     unprotectPile.setVisible(false);
-                } else if (pileOwner.equals(mMyGameIp)) {
+                } else if (pileOwner == me) {
                     unprotectPile.setVisible(true);
                     protectPile.setVisible(false);
                 } else {
@@ -250,33 +287,42 @@ public class TableView extends Activity implements OnClickListener, Observer {
             setTableState(TableState.moveAll);
             break;
         case R.id.menu_item_protect_pile:
-            mGuiController.sendOperation(new Operation(Op.protect, mPileId, mMyGameIp));
+            mGuiController.sendOperation(new Operation(Op.protect, mPileId));
             mToast = Toast.makeText(this, pileName + " protected!", Toast.LENGTH_SHORT);
             mToast.show();
             break;
         case R.id.menu_item_protect_empty_pile:
-            mGuiController.sendOperation(new Operation(Op.protect, mPileId, mMyGameIp));
+            mGuiController.sendOperation(new Operation(Op.protect, mPileId));
             mToast = Toast.makeText(this, pileName + " protected!", Toast.LENGTH_SHORT);
             mToast.show();
             break;
         case R.id.menu_item_unprotect_pile:
-            mGuiController.sendOperation(new Operation(Op.unprotect, mPileId, mMyGameIp));
+            mGuiController.sendOperation(new Operation(Op.unprotect, mPileId));
             mToast = Toast.makeText(this, pileName + " unprotected!", Toast.LENGTH_SHORT);
             mToast.show();
             break;
         case R.id.menu_item_unprotect_empty_pile:
-            mGuiController.sendOperation(new Operation(Op.unprotect, mPileId, mMyGameIp));
+            mGuiController.sendOperation(new Operation(Op.unprotect, mPileId));
             mToast = Toast.makeText(this, pileName + " unprotected!", Toast.LENGTH_SHORT);
             mToast.show();
             break;
         case R.id.menu_item_deal_cards:
             setTableState(TableState.deal);
+            mToast = Toast.makeText(this, "Select piles to deal to, then tap " + pileName
+                    + " again", Toast.LENGTH_LONG);
+            mToast.show();
             break;
 
         case R.id.menu_item_pile_move:
             setTableState(TableState.pileMove);
             break;
 
+        case R.id.menu_item_gather:
+            mGuiController.sendOperation(new Operation(Op.gather, mPileId));
+            mToast = Toast.makeText(this, "Cards gathered in " + pileName + "!", Toast.LENGTH_SHORT);
+            mToast.show();
+            break;
+
         case R.id.menu_item_rename:
             String msg = "Please enter a new name for the pile: ";
             PileNameDialog dialog = new PileNameDialog(this, mPileId, msg, mGuiController
@@ -364,7 +410,6 @@ public class TableView extends Activity implements OnClickListener, Observer {
         if (mTableState.equals(TableState.move)) {
             Intent pileView = new Intent(this, PileView.class);
             pileView.putExtra(Constant.IntentPileViewPileId, mMoveOp.getPile1());
-            pileView.putExtra(Constant.IntentPileViewIp, mMyGameIp);
             // Tell the pileView which pile was clicked
             mMoveOp.setPile2(view.getId());
             mGuiController.sendOperation(mMoveOp);
@@ -378,23 +423,39 @@ public class TableView extends Activity implements OnClickListener, Observer {
             return;
 
         } else if (mTableState.equals(TableState.deal)) {
+            Integer target = view.getId();
+            if (target != mPileId) {
+                // Select or unselect a pile to deal to
+                if (mGuiController.getGameState().getPiles().get(target) == null) {
+                    mToast = Toast.makeText(this, "There is no pile to deal to there!",
+                            Toast.LENGTH_SHORT);
+                    mToast.show();
+                } else if (!mDealTargets.remove(target)) {
+                    mDealTargets.add(target);
+                }
+                setTableState(TableState.deal);
+                return;
+            }
             Pile currentPile = mGuiController.getGameState().getPiles().get(mPileId);
-            if (currentPile.getSize() == 1) {
-                // Exit deal mode if there are no more cards in the pile after this move
+            if (mDealTargets.isEmpty() || currentPile == null || currentPile.getSize() == 0) {
+                // Exit deal mode if there is nothing to deal or nowhere to deal it
                 setTableState(TableState.normal);
                 mToast = Toast.makeText(this, "Exited deal mode", Toast.LENGTH_SHORT);
                 mToast.show();
-            } else if (!(currentPile.getOwner().equals(Constant.PileHasNoOwner) || mMyGameIp
-                    .equals(currentPile.getOwner()))) {
+            } else if (currentPile.getOwner() != Constant.PileHasNoOwner
+                    && currentPile.getOwner() != mGuiController.getSessionId()) {
                 // Exit deal mode if the pile dealing from has been protected by another user
                 setTableState(TableState.normal);
                 mToast = Toast.makeText(this, "The pile dealing from is now protected!",
                         Toast.LENGTH_SHORT);
                 mToast.show();
-                return;
+            } else {
+                // Ask how many cards each pile should get, suggesting an even split
+                String msg = "How many cards to each of the " + mDealTargets.size() + " piles?";
+                int perPile = Math.max(1, currentPile.getSize() / mDealTargets.size());
+                DealDialog dialog = new DealDialog(this, mPileId, msg, perPile);
+                dialog.show(this);
             }
-            mGuiController.sendOperation(new Operation(Op.move, mPileId, view.getId(), currentPile
-                    .getCard(0)));
             return;
 
         } else if (mTableState.equals(TableState.pileMove)) {
@@ -410,10 +471,9 @@ public class TableView extends Activity implements OnClickListener, Observer {
 
             // Checks whether the pile is protected by another user before
             // allowing access to the pile view.
-            if ((p.getOwner().equals(mMyGameIp)) || (p.getOwner().equals(Constant.PileHasNoOwner))) {
+            if (p.getOwner() == mGuiController.getSessionId() || p.getOwner() == Constant.PileHasNoOwner) {
                 Intent pileView = new Intent(this, PileView.class);
                 pileView.putExtra(Constant.IntentPileViewPileId, mPileId);
-                pileView.putExtra(Constant.IntentPileViewIp, mMyGameIp);
                 startActivity(pileView);
             } else {
                 mToast = Toast.makeText(this, "This pile is protected by another user!",
@@ -436,6 +496,9 @@ public class TableView extends Activity implements OnClickListener, Observer {
      */
     public void setTableState(TableState tableState) {
         mTableState = tableState;
+        if (tableState != TableState.deal) {
+            mDealTargets.clear();
+        }
         TextView tableStateText = (TextView) findViewById(R.id.tableStateText);
         String modeStr = "";
         LinearLayout textbar = (LinearLayout) findViewById(R.id.textbar);
@@ -447,7 +510,7 @@ public class TableView extends Activity implements OnClickListener, Observer {
         }
         switch (mTableState) {
         case deal:
-            modeStr = "Dealing from " + pileName;
+            modeStr = "Dealing from " + pileName + " to " + mDealTargets.size() + " piles";
             textbar.setBackgroundColor(Constant.TextbarAlertColor);
             break;
         case move:
@@ -483,6 +546,9 @@ public class TableView extends Activity implements OnClickListener, Observer {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (mMulticastLock != null) {
+            mMulticastLock.release();
+        }
         if (!mTerminateMode) {
             // mGuiController.terminate();
             android.os.Process.killProcess(android.os.Process.myPid());
@@ -498,7 +564,6 @@ public class TableView extends Activity implements OnClickListener, Observer {
             // Abort the move and go back to the pileView
             Intent i = new Intent(this, PileView.class);
             i.putExtra(Constant.IntentPileViewPileId, mPileId);
-            i.putExtra(Constant.IntentPileViewIp, mMyGameIp);
             setTableState(TableState.normal);
             startActivity(i);
             return;
@@ -538,14 +603,32 @@ public class TableView extends Activity implements OnClickListener, Observer {
     }
 
     /**
-     * Updates the tableView to show the current state of all piles.
+     * Shows the round-trip time to the host next to the ip in the textbar.
+     * 
+     * @param rttMicros The smoothed round-trip time in microseconds
+     * @param jitterMicros The variation of the round-trip time in microseconds
      */
-    public void updateTableView() {
-        // Set the ip in the textbar
+    public void showRoundTrip(long rttMicros, long jitterMicros) {
+        mRoundTrip = " (" + (rttMicros + 500) / 1000 + "\u00b1" + (jitterMicros + 500) / 1000 + " ms)";
+        updateIpText();
+    }
+
+    /**
+     * Sets the ip and the round-trip time in the textbar.
+     */
+    private void updateIpText() {
         TextView ipText = (TextView) findViewById(R.id.myIpText);
         String myIp = mDisplayIp;
         myIp = mIsHost ? "Host - " + myIp : "Client - " + myIp;
-        ipText.setText(myIp);
+        ipText.setText(myIp + mRoundTrip);
+    }
+
+    /**
+     * Updates the tableView to show the current state of all piles.
+     */
+    public void updateTableView() {
+        // Set the ip in the textbar
+        updateIpText();
 
         int i = 0;
 
@@ -570,7 +653,7 @@ public class TableView extends Activity implements OnClickListener, Observer {
                     // Sets the picture of the pile to the back of a card
                     // if the pile is protected by a user.
 
-                    if (!p.getOwner().equals(Constant.PileHasNoOwner)) {
+                    if (p.getOwner() != Constant.PileHasNoOwner) {
                         int back = getResources().getIdentifier(Constant.ProtectedCardImage,
                                 "drawable", getPackageName());
                         b.setBackgroundResource(back);
@@ -605,8 +688,12 @@ public class TableView extends Activity implements OnClickListener, Observer {
         if (obs instanceof DialogText) {
             GameState gameState = mGuiController.getGameState();
             DialogText dt = (DialogText) param;
+            if (dt.getContext() == Context.dealCards) {
+                dealCards(dt);
+                return;
+            }
             // See if the name provided is unique
-            if (gameState.getPileNames().contains(dt.getString())) {
+            if (gameState.hasPileNamed(dt.getString())) {
 
                 if (dt.getString().equals(gameState.getDefaultPileName())) {
                     // If the default name has already been taken, let the gameController handle it
@@ -635,6 +722,25 @@ public class TableView extends Activity implements OnClickListener, Observer {
         }
     }
 
+    /**
+     * Deals cards to the selected piles in a single operation, with the number of cards per pile given in the dialog.
+     * 
+     * @param dt The DialogText of the DealDialog
+     */
+    private void dealCards(DialogText dt) {
+        int perPile;
+        try {
+            perPile = Integer.parseInt(dt.getString());
+        } catch (NumberFormatException e) {
+            perPile = 0;
+        }
+        if (perPile > 0 && !mDealTargets.isEmpty()) {
+            mGuiController.sendOperation(new Operation(Op.deal, dt.getId(), new ArrayList<Integer>(
+                    mDealTargets), perPile * mDealTargets.size()));
+        }
+        setTableState(TableState.normal);
+    }
+
     /**
      * @param moveOp the mMoveOp to set
      */
@@ -0,0 +1,97 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.client.dialogs;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import android.R.string;
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.text.InputType;
+import android.widget.EditText;
+
+/**
+ * A dialog shown to the user that lets it choose how many cards to deal to each pile.
+ * 
+ * @author group17
+ */
+public class DealDialog extends Observable {
+    private EditText         mInput;
+    private final DialogText mDialogText;
+    private final String     mMessage;
+    private final int        mDefaultCount;
+
+    /**
+     * Creates a new Dialog object.
+     * 
+     * @param o The object that will listen to the input
+     * @param id The id of the pile to deal from
+     * @param msg The message that will be shown to the user
+     * @param defaultCount The number of cards to suggest
+     */
+    public DealDialog(Observer o, int id, String msg, int defaultCount) {
+        mDialogText = new DialogText(o, id, DialogText.Context.dealCards);
+        mMessage = msg;
+        mDefaultCount = defaultCount;
+    }
+
+    /**
+     * Shows the dialog in the specified activity. Prompts the user to enter the number of cards to deal to each pile.
+     * If no number is entered, the suggested number is used
+     * 
+     * @param act The activity to show the dialog in
+     */
+    public void show(Activity act) {
+        // A number input for the user to enter the count in
+        mInput = new EditText(act);
+        mInput.setInputType(InputType.TYPE_CLASS_NUMBER);
+        mInput.setText(Integer.toString(mDefaultCount));
+        AlertDialog.Builder alert = new AlertDialog.Builder(act);
+
+        alert.setTitle("Deal cards");
+        alert.setMessage(mMessage);
+
+        alert.setView(mInput);
+        // What to do if the ok-button is pressed
+        alert.setPositiveButton(string.ok, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                String str = mInput.getText().toString().trim();
+                if (str.equals("")) {
+                    str = Integer.toString(mDefaultCount);
+                }
+                mDialogText.setText(str);
+            }
+        });
+        // What to do if the cancel-button is pressed
+        alert.setNegativeButton(string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                // Cancelled
+            }
+        });
+        // Show the dialog
+        alert.show();
+    }
+}
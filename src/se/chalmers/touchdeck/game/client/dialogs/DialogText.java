@@ -36,10 +36,10 @@ public class DialogText extends Observable {
     private Context   mContext = Context.namePile;
 
     /**
-     * The context of the DialogText (Whether it as rename or create dialog).
+     * The context of the DialogText (Whether it as rename, create or deal dialog).
      */
     public enum Context {
-        namePile, renamePile
+        namePile, renamePile, dealCards
     }
 
     /**
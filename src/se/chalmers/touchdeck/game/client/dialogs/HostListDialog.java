@@ -0,0 +1,101 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.client.dialogs;
+
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import se.chalmers.touchdeck.network.DiscoveredHost;
+import android.R.string;
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+
+/**
+ * A dialog shown to the user that lists the games found on the local network, fastest first, and lets it choose one
+ * to join or enter the ip address manually.
+ * 
+ * @author group17
+ */
+public class HostListDialog extends Observable {
+    private final DialogText           mDialogText;
+    private final List<DiscoveredHost> mHosts;
+    private final Observer             mObserver;
+    private final int                  mId;
+
+    /**
+     * Creates a new Dialog object.
+     * 
+     * @param o The object that will listen to the input
+     * @param id The id of the button that was pressed
+     * @param hosts The games found, fastest first
+     */
+    public HostListDialog(Observer o, int id, List<DiscoveredHost> hosts) {
+        mDialogText = new DialogText(o, id);
+        mObserver = o;
+        mId = id;
+        mHosts = hosts;
+    }
+
+    /**
+     * Shows the dialog in the specified activity. The ip address and port of the chosen game are given to the
+     * observer.
+     * 
+     * @param act The activity to show the dialog in
+     */
+    public void show(final Activity act) {
+        AlertDialog.Builder alert = new AlertDialog.Builder(act);
+        alert.setTitle("Join game");
+
+        String[] items = new String[mHosts.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = mHosts.get(i).toString();
+        }
+        // What to do if a game is chosen
+        alert.setItems(items, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                DiscoveredHost host = mHosts.get(which);
+                mDialogText.setText(host.getIpAddr() + ":" + host.getPort());
+            }
+        });
+        // What to do if the user wants to enter the ip address
+        alert.setNeutralButton("Enter IP", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                String msg = "Please enter the host IP: ";
+                JoinGameDialog joinDialog = new JoinGameDialog(mObserver, mId, msg);
+                joinDialog.show(act);
+            }
+        });
+        // What to do if the cancel-button is pressed
+        alert.setNegativeButton(string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                // Cancelled
+            }
+        });
+        // Show the dialog
+        alert.show();
+    }
+}
@@ -32,7 +32,8 @@ import android.content.DialogInterface;
 import android.widget.EditText;
 
 /**
- * A dialog shown to the user that lets it enter the ip address of the game to join.
+ * A dialog shown to the user that lets it enter the ip address of the game to join, followed by the port if the game
+ * does not listen to the default one, e.g. 192.168.0.2:4243.
  * 
  * @author group17
  */
@@ -119,4 +120,37 @@ public class JoinGameDialog extends Observable {
         }
     }
 
+    /**
+     * Gives the ip address part of an address entered by the user.
+     * 
+     * @param address The ip address, optionally followed by a colon and the port
+     * @return The ip address, or null if there is none
+     */
+    public static String ipOf(String address) {
+        if (address == null) {
+            return null;
+        }
+        int colon = address.indexOf(':');
+        return colon < 0 ? address : address.substring(0, colon);
+    }
+
+    /**
+     * Gives the port part of an address entered by the user.
+     * 
+     * @param address The ip address, optionally followed by a colon and the port
+     * @return The port, Constant.GameControllerPort if none was given, or -1 if it is not a valid port
+     */
+    public static int portOf(String address) {
+        int colon = address == null ? -1 : address.indexOf(':');
+        if (colon < 0) {
+            return Constant.GameControllerPort;
+        }
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            return port > 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
 }
@@ -0,0 +1,87 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.io.Serializable;
+
+/**
+ * The answer to an operation, telling the client whether it was performed and if not, why. Sent to the client that
+ * performed the operation after the update it caused, so the client knows it has already seen its effect.
+ * 
+ * @author group17
+ */
+public class Ack implements Serializable {
+
+    private static final long serialVersionUID = 4720118613209857725L;
+
+    /**
+     * Why an operation was or was not performed.
+     */
+    public enum Reason {
+        applied, notAllowed, occupied, noSuchPile, noEffect, invalid, throttled, busy
+    }
+
+    private final int    mSeq;
+    private final Reason mReason;
+    private final int    mVersion;
+
+    /**
+     * Creates a new ack.
+     * 
+     * @param seq The number the client gave the operation
+     * @param reason Why the operation was or was not performed
+     * @param version The version of the state after the operation
+     */
+    public Ack(int seq, Reason reason, int version) {
+        mSeq = seq;
+        mReason = reason;
+        mVersion = version;
+    }
+
+    /**
+     * @return The number the client gave the operation
+     */
+    public int getSeq() {
+        return mSeq;
+    }
+
+    /**
+     * @return Why the operation was or was not performed
+     */
+    public Reason getReason() {
+        return mReason;
+    }
+
+    /**
+     * @return Whether the operation was performed
+     */
+    public boolean isApplied() {
+        return mReason == Reason.applied;
+    }
+
+    /**
+     * @return The version of the state after the operation, which includes its changes if it was performed
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+}
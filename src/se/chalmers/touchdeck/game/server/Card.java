@@ -34,10 +34,13 @@ import se.chalmers.touchdeck.misc.enums.Suit;
  * @author group17
  */
 public class Card implements Serializable {
-    private static final long serialVersionUID = -2103195711850738986L;
-    private final Suit        mSuit;
-    private final Rank        mRank;
-    private boolean           mFaceUp;
+    private static final long   serialVersionUID = -2103195711850738986L;
+    private static final Suit[] SUITS            = Suit.values();
+    private static final Rank[] RANKS            = Rank.values();
+    public static final int     NumOfCards       = SUITS.length * RANKS.length;
+    private final Suit          mSuit;
+    private final Rank          mRank;
+    private boolean             mFaceUp;
 
     /**
      * Constructor for creating a card with face status down.
@@ -63,6 +66,34 @@ public class Card implements Serializable {
         mFaceUp = faceUp;
     }
 
+    /**
+     * Copy constructor.
+     * 
+     * @param other The card to copy
+     */
+    public Card(Card other) {
+        this(other.mSuit, other.mRank, other.mFaceUp);
+    }
+
+    /**
+     * Creates a face down card from its index in the deck.
+     * 
+     * @param index The index, as given by getIndex
+     * @return The card
+     */
+    public static Card fromIndex(int index) {
+        return new Card(SUITS[index / RANKS.length], RANKS[index % RANKS.length]);
+    }
+
+    /**
+     * Returns the index of the card in a sorted deck, the same for all cards with the same suit and rank.
+     * 
+     * @return The index, from 0 to NumOfCards - 1
+     */
+    public int getIndex() {
+        return mSuit.ordinal() * RANKS.length + mRank.ordinal();
+    }
+
     /**
      * Returns the suit of the card.
      * 
@@ -0,0 +1,67 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+/**
+ * Decides how long the updates to the clients are held back to be sent together. It follows how far apart the
+ * updates come: nothing is held back when they come further apart than the longest window, since there would be
+ * nothing to send together. Otherwise an update is held back for at most a quarter of the round-trip time of the
+ * closest client, which it hardly notices.
+ * 
+ * @author group17
+ */
+public class CoalesceWindow {
+    private final long mMax;
+    private boolean    mHasUpdate = false;
+    private long       mLastUpdate;
+    private long       mUpdateGap = -1;
+
+    /**
+     * Creates a new CoalesceWindow.
+     * 
+     * @param max The longest window in nanoseconds
+     */
+    public CoalesceWindow(long max) {
+        mMax = max;
+    }
+
+    /**
+     * Takes note of an update and gives the window for it.
+     * 
+     * @param now The time of the update in nanoseconds
+     * @param rtt The round-trip time to the closest client in microseconds, or -1 if it is not known
+     * @return The time in nanoseconds since the last update was sent before the next may be sent
+     */
+    public long next(long now, long rtt) {
+        if (mHasUpdate) {
+            // A long pause only counts as a bit longer than the window, so that the next burst is caught quickly
+            long gap = Math.min(now - mLastUpdate, 2 * mMax);
+            mUpdateGap = mUpdateGap < 0 ? gap : mUpdateGap + (gap - mUpdateGap) / 4;
+        }
+        mHasUpdate = true;
+        mLastUpdate = now;
+        if (mUpdateGap < 0 || mUpdateGap > mMax) {
+            return 0;
+        }
+        return rtt < 0 ? mMax : Math.min(mMax, rtt * 1000 / 4);
+    }
+}
@@ -21,21 +21,46 @@
 
 package se.chalmers.touchdeck.game.server;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import se.chalmers.touchdeck.game.server.Operation.Op;
 import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.enums.Face;
 import se.chalmers.touchdeck.misc.enums.Rank;
 import se.chalmers.touchdeck.misc.enums.Suit;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.misc.metrics.Counter;
+import se.chalmers.touchdeck.misc.metrics.Histogram;
+import se.chalmers.touchdeck.misc.metrics.Metrics;
+import se.chalmers.touchdeck.misc.metrics.RoundTripTime;
+import se.chalmers.touchdeck.network.ClientWriter;
+import se.chalmers.touchdeck.network.ConnectionExecutor;
 import se.chalmers.touchdeck.network.GameListener;
 import se.chalmers.touchdeck.network.GameToGuiConnection;
+import se.chalmers.touchdeck.network.HostAnnouncer;
+import se.chalmers.touchdeck.network.MulticastSender;
+import se.chalmers.touchdeck.network.SerializedMessage;
 import se.chalmers.touchdeck.network.IpFinder;
-import android.util.Log;
+import se.chalmers.touchdeck.network.LocalConnection;
+import se.chalmers.touchdeck.network.MetricsEndpoint;
 
 /**
  * Controls the game logic.
@@ -44,36 +69,181 @@ import android.util.Log;
  */
 public class GameController {
 
+    // The tables hosted in this process by their handles, so that activities can pass a handle instead of the state
+    private static final HashMap<Integer, GameController> sHostedTables = new HashMap<Integer, GameController>();
+    private static int                                    sNextHandle   = 1;
+
     private final ArrayList<Pile>                      mTable               = new ArrayList<Pile>();
-    private final HashSet<String>                      mPileNames           = new HashSet<String>();
+    private final PileNameRegistry                     mPileNames           = new PileNameRegistry();
 
-    private final GameState                            mGameState;
+    private volatile GameState                         mGameState;
+    private boolean                                    mHostStillLeft       = true;
+    private boolean                                    mRestarted           = false;
     private final int                                  mGuiPort             = Constant.GuiControllerPort;
-    private final HashMap<String, GameToGuiConnection> mGameToGuiThreads    = new HashMap<String, GameToGuiConnection>();
+    private final HashMap<String, Session>             mSessionsByIp        = new HashMap<String, Session>();
+    private final HashMap<Long, Session>               mSessionsByToken     = new HashMap<Long, Session>();
+    private final HashMap<Integer, BitSet>             mPilesByOwner        = new HashMap<Integer, BitSet>();
+    private int                                        mNextSessionId       = Constant.PileHasNoOwner + 1;
     private final LinkedList<Socket>                   mAllGameToGuiSockets = new LinkedList<Socket>();
+    private final HashSet<Socket>                      mMulticastSockets    = new HashSet<Socket>();
+    private MulticastSender                            mMulticastSender;
+    private LocalConnection                            mLocalConnection;
+    private Session                                    mLocalSession;
+    private int                                        mHandle;
+    private final boolean                              mDedicated;
     private final GameListener                         mGameListener;
+    private final HostAnnouncer                        mHostAnnouncer;
+    private final StateHistory                         mHistory             = new StateHistory(
+                                                                                    Constant.StateHistorySize);
+    private UndoHistory                                mUndo                = new UndoHistory(Constant.UndoDepth,
+                                                                                    Constant.UndoMaxCards);
+    private GameRecorder                               mRecorder;
+    private boolean                                    mReplaying           = false;
+    private Ack.Reason                                 mRejection;
+    private final BitSet                               mChangedPiles        = new BitSet(Constant.NumOfPiles);
+    private final Random                               mRandom              = new Random();
+    private final long                                 mTableId             = mRandom.nextLong();
+
+    private final Metrics                              mMetrics;
+    private final Histogram[]                          mOpTimes             = new Histogram[Op.values().length];
+    private final Histogram                            mWaitTime;
+    private final Histogram                            mQueueDepth;
+    private final Histogram                            mBroadcastTime;
+    private final Histogram                            mBroadcastBytes;
+    private final Histogram                            mBroadcastVersions;
+    private final Counter                              mClients;
+    private final Counter                              mRejected;
+    private final Map<Socket, ClientWriter>            mWriters;
+    private final AtomicInteger                        mPendingOps          = new AtomicInteger();
+
+    // Messages waiting to be written to the clients, and the lock that keeps them in order while they are queued
+    private final LinkedList<Outgoing>                 mOutbox              = new LinkedList<Outgoing>();
+    private final Object                               mSendLock            = new Object();
+    private final ScheduledExecutorService             mCoalescer;
+    private final BitSet                               mUnsentPiles         = new BitSet(Constant.NumOfPiles);
+    private int                                        mUnsentFrom          = -1;
+    private final ArrayList<Outgoing>                  mHeldAcks            = new ArrayList<Outgoing>();
+    private boolean                                    mBroadcastScheduled  = false;
+    private long                                       mLastBroadcast       = 0;
+    private final CoalesceWindow                       mCoalesceWindow      = new CoalesceWindow(
+                                                                                    Constant.MaxCoalesceWindow * 1000L);
 
     /**
      * Creates a new gameController and sets up a deck.
      */
     public GameController() {
+        this(Constant.DefaultTableName);
+    }
+
+    /**
+     * Creates a new gameController, sets up a deck and announces the table on the local network.
+     * 
+     * @param tableName The name of the table shown to players searching for games
+     */
+    public GameController(String tableName) {
+        this(tableName, Constant.GameControllerPort, true, true, false);
+    }
+
+    /**
+     * Creates a dedicated table, run by a server that has no player of its own. The table is not ended by a player
+     * leaving, only by closing it.
+     * 
+     * @param tableName The name of the table shown to players searching for games
+     * @param port The port to listen to for players
+     * @param announce Whether to answer players searching for games on the local network, only one table on a device
+     *            can; a server with more tables announces them with one HostAnnouncer instead
+     */
+    public GameController(String tableName, int port, boolean announce) {
+        this(tableName, port, true, announce, true);
+    }
+
+    /**
+     * Creates a new gameController and sets up a deck.
+     * 
+     * @param tableName The name of the table
+     * @param port The port to listen to for players
+     * @param networked Whether to listen for players, a game that is replayed is not
+     * @param announce Whether to announce the table on the local network
+     * @param dedicated Whether the table is run by a server that has no player of its own
+     */
+    private GameController(final String tableName, int port, boolean networked, boolean announce, boolean dedicated) {
+        mDedicated = dedicated;
         // Fill the table empty positions.
         for (int i = 0; i < Constant.NumOfPiles; i++) {
             mTable.add(i, null);
         }
         createDeck();
-        mGameState = new GameState(mTable, mPileNames);
+        mGameState = new GameState(mTable);
+
+        // Times are recorded in microseconds and sizes in bytes
+        mMetrics = new Metrics("table " + tableName);
+        for (Op op : Op.values()) {
+            mOpTimes[op.ordinal()] = mMetrics.histogram("op." + op + ".micros");
+        }
+        mWaitTime = mMetrics.histogram("ops.waitMicros");
+        mQueueDepth = mMetrics.histogram("ops.queueDepth");
+        mBroadcastTime = mMetrics.histogram("broadcast.micros");
+        mBroadcastBytes = mMetrics.histogram("broadcast.bytes");
+        mBroadcastVersions = mMetrics.histogram("broadcast.versions");
+        mClients = mMetrics.counter("clients");
+        mRejected = mMetrics.counter("ops.rejected");
+        mWriters = new ConcurrentHashMap<Socket, ClientWriter>();
+        if (!networked) {
+            // Not listed with the tables that are played
+            mMetrics.unregister();
+            mGameListener = null;
+            mHostAnnouncer = null;
+            mCoalescer = null;
+            return;
+        }
+        MetricsEndpoint.start();
+
+        // Sends the updates that have been held back to be sent together
+        mCoalescer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Coalescer " + tableName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
         // Start the listener for incoming connections
-        mGameListener = new GameListener(this, Constant.GameControllerPort);
+        mGameListener = new GameListener(this, port, mMetrics);
         new Thread(mGameListener).start();
+
+        // Answer players searching for games
+        if (announce) {
+            mHostAnnouncer = new HostAnnouncer(this, tableName, port);
+            new Thread(mHostAnnouncer).start();
+        } else {
+            mHostAnnouncer = null;
+        }
+
+        if (Constant.UseMulticast) {
+            mMulticastSender = new MulticastSender(mTableId);
+        }
+    }
+
+    /**
+     * @return The number of clients connected to the game
+     */
+    public synchronized int getNumberOfClients() {
+        return mSessionsByToken.size();
+    }
+
+    /**
+     * @return The metrics of the game
+     */
+    public Metrics getMetrics() {
+        return mMetrics;
     }
 
     /**
      * @param socket The socket to add as the connection to the guiController
      */
-    public void addSocket(Socket socket) {
-        Log.d("in GaC", "socket added to list " + socket.getRemoteSocketAddress().toString());
+    public synchronized void addSocket(Socket socket) {
+        Logger.d("in GaC", "socket added to list ", socket.getRemoteSocketAddress());
         mAllGameToGuiSockets.add(socket);
     }
 
@@ -82,159 +252,991 @@ public class GameController {
      * 
      * @param socket The socket to remove
      */
-    public void removeSocket(Socket socket) {
-        Log.d("in GaC", "Socket removed from list" + socket.getRemoteSocketAddress().toString());
+    public synchronized void removeSocket(Socket socket) {
+        if (socket == null) {
+            return;
+        }
+        Logger.d("in GaC", "Socket removed from list ", socket.getRemoteSocketAddress());
         mAllGameToGuiSockets.remove(socket);
+        mMulticastSockets.remove(socket);
+        ClientWriter writer = mWriters.remove(socket);
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Called when the connection to a client has been set up. Sends the client its session token along with the whole
+     * state, or only what it has missed if it is resuming, and then starts sending it updates. The client is only
+     * sent what it may see and needs, see GameState.projectFor.
+     * 
+     * @param session The session of the client
+     * @param socket The socket connected to the client
+     */
+    public void sessionConnected(Session session, Socket socket) {
+        synchronized (this) {
+            // The client starts from the latest version, the others must get there first
+            broadcastUnsent();
+            session.setSocket(socket);
+            StateDelta delta = null;
+            if (session.getResumeVersion() >= 0) {
+                delta = createDelta(session.getResumeVersion(), session);
+                session.setResumeVersion(-1);
+            }
+            if (delta != null) {
+                queue(new Outgoing(new SessionInfo(session.getToken(), session.getId(), mTableId, delta), socket));
+            } else {
+                queue(new Outgoing(new SessionInfo(session.getToken(), session.getId(), mTableId,
+                        stateFor(session)), socket));
+            }
+            addSocket(socket);
+            mWriters.put(socket, new ClientWriter(socket, mMetrics.histogram(clientMetric(session.getId()))));
+            if (session.isMulticast()) {
+                mMulticastSockets.add(socket);
+            }
+        }
+        flushUpdates();
+    }
+
+    /**
+     * Publishes the changes since the last update as a new version of the state, and queues the changes to be sent
+     * to all the clients. The new version shares the unchanged piles with the one before it. The gui of the host gets
+     * every version right away; when operations come quickly the other clients get the versions made within a short
+     * window together, as one update, see coalesceWindow.
+     */
+    private synchronized void sendUpdatedState() {
+        int fromVersion = mGameState.getVersion();
+        boolean restarted = mRestarted;
+        mGameState = new GameState(mTable, fromVersion + 1, mPileNames.getDefaultPileNo(), mHostStillLeft,
+                mRestarted);
+        mRestarted = false;
+        mHistory.record(mGameState.getVersion(), mChangedPiles);
+        if (mLocalSession != null) {
+            queue(new Outgoing(new StateDelta(mGameState, fromVersion, mChangedPiles), mLocalSession.getLocal()));
+        }
+        if (mUnsentFrom < 0) {
+            mUnsentFrom = fromVersion;
+        }
+        mUnsentPiles.or(mChangedPiles);
+        mChangedPiles.clear();
+
+        long now = System.nanoTime();
+        long window = coalesceWindow(now);
+        // A restart is sent right away since an update only tells whether its last version was a restart
+        if (restarted || !mHostStillLeft || now - mLastBroadcast >= window) {
+            broadcastUnsent();
+        } else if (!mBroadcastScheduled) {
+            mBroadcastScheduled = true;
+            mCoalescer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (GameController.this) {
+                        broadcastUnsent();
+                    }
+                    flushUpdates();
+                }
+            }, mLastBroadcast + window - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gives the time updates are held back to be sent together, see CoalesceWindow.
+     * 
+     * @param now The time of the update in nanoseconds
+     * @return The time in nanoseconds since the last update was sent before the next may be sent
+     */
+    private long coalesceWindow(long now) {
+        long rtt = -1;
+        for (Session session : mSessionsByToken.values()) {
+            RoundTripTime roundTrip = session.getRoundTrip();
+            if (roundTrip != null && roundTrip.getRtt() >= 0 && (rtt < 0 || roundTrip.getRtt() < rtt)) {
+                rtt = roundTrip.getRtt();
+            }
+        }
+        long window = mCoalesceWindow.next(now, rtt);
+        return mCoalescer == null ? 0 : window;
+    }
+
+    /**
+     * Queues the versions that have not been sent to the clients yet as one update, followed by the acks that were
+     * held back with them.
+     */
+    private synchronized void broadcastUnsent() {
+        mBroadcastScheduled = false;
+        if (mUnsentFrom < 0) {
+            return;
+        }
+        StateDelta delta = new StateDelta(mGameState, mUnsentFrom, mUnsentPiles);
+        mBroadcastVersions.record(mGameState.getVersion() - mUnsentFrom);
+        mUnsentFrom = -1;
+        mUnsentPiles.clear();
+        mLastBroadcast = System.nanoTime();
+        queueBroadcast(delta);
+        mOutbox.addAll(mHeldAcks);
+        mHeldAcks.clear();
+    }
+
+    /**
+     * Queues an update to all the clients but the gui of the host. The clients are only sent what they may see and
+     * need: the cards of piles protected by others are left out, and of the other piles only the top card is sent
+     * unless the client is looking at the pile.
+     * 
+     * @param delta The update
+     */
+    private void queueBroadcast(StateDelta delta) {
+        Logger.d("in GaC, sendUpdatedState ", "Sockets left: ", mAllGameToGuiSockets.size());
+        if (mAllGameToGuiSockets.isEmpty()) {
+            return;
+        }
+        // The owners of changed protected piles get the update as they see it, and the clients looking at a changed
+        // pile get one copy per pile. Everyone else shares one copy with only summaries and hidden piles, so that
+        // each version of the update is only serialized once for each way it is seen.
+        ArrayList<Socket> everyone = new ArrayList<Socket>(mAllGameToGuiSockets);
+        HashMap<Integer, ArrayList<Socket>> bySubscription = new HashMap<Integer, ArrayList<Socket>>();
+        boolean ownCopyMulticast = false;
+        BitSet owners = delta.getHiddenOwners();
+        for (Session session : mSessionsByToken.values()) {
+            Socket socket = session.getSocket();
+            int subscribed = session.getSubscribedPile();
+            if (socket == null || !everyone.contains(socket)) {
+                continue;
+            }
+            if (owners.get(session.getId())) {
+                queue(new Outgoing(delta.projectFor(session.getId(), subscribed), socket));
+            } else if (delta.getPiles().containsKey(subscribed)) {
+                ArrayList<Socket> sockets = bySubscription.get(subscribed);
+                if (sockets == null) {
+                    sockets = new ArrayList<Socket>();
+                    bySubscription.put(subscribed, sockets);
+                }
+                sockets.add(socket);
+            } else {
+                continue;
+            }
+            everyone.remove(socket);
+            ownCopyMulticast |= mMulticastSockets.contains(socket);
+        }
+        for (Map.Entry<Integer, ArrayList<Socket>> entry : bySubscription.entrySet()) {
+            StateDelta projected = delta.projectFor(Constant.PileHasNoOwner, entry.getKey());
+            queue(new Outgoing(projected, entry.getValue(), entry.getValue(), null));
+        }
+        if (everyone.isEmpty()) {
+            return;
+        }
+        // Clients listening to the multicast group only need their own copy if the datagram could not be sent. The
+        // shared copy is not multicast if it would reach a client with its own copy as well.
+        ArrayList<Socket> unicast = new ArrayList<Socket>(everyone);
+        unicast.removeAll(mMulticastSockets);
+        MulticastSender multicast = mMulticastSockets.isEmpty() || ownCopyMulticast ? null : mMulticastSender;
+        queue(new Outgoing(delta.projectFor(Constant.PileHasNoOwner, -1), everyone, unicast, multicast));
+    }
+
+    /**
+     * Queues a message to be written by flushUpdates.
+     * 
+     * @param out The message and the clients to write it to
+     */
+    private synchronized void queue(Outgoing out) {
+        mOutbox.add(out);
+    }
+
+    /**
+     * Queues a message to a single client.
+     * 
+     * @param session The session of the client
+     * @param payload The message
+     */
+    private synchronized void queueTo(Session session, Serializable payload) {
+        if (session.getLocal() != null) {
+            queue(new Outgoing(payload, session.getLocal()));
+        } else if (session.getSocket() != null) {
+            queue(new Outgoing(payload, session.getSocket()));
+        }
+    }
+
+    /**
+     * Queues the answer to an operation. If the update the operation caused is held back, so is the answer, so that
+     * the client has seen the update when it gets the answer.
+     * 
+     * @param session The session of the client
+     * @param ack The answer
+     */
+    private synchronized void queueAck(Session session, Ack ack) {
+        if (mUnsentFrom >= 0 && session.getLocal() == null && session.getSocket() != null) {
+            mHeldAcks.add(new Outgoing(ack, session.getSocket()));
+        } else {
+            queueTo(session, ack);
+        }
+    }
+
+    /**
+     * Hands the queued messages to the writers of the clients, in the order they were queued. Must not be called while
+     * holding the lock on the game, which is only taken to pick up the queue, so that the game can go on while the
+     * messages are serialized. The messages are written by the ClientWriters, so a slow client does not hold up the
+     * others.
+     */
+    private void flushUpdates() {
+        synchronized (mSendLock) {
+            ArrayList<Outgoing> pending;
+            synchronized (this) {
+                if (mOutbox.isEmpty()) {
+                    return;
+                }
+                pending = new ArrayList<Outgoing>(mOutbox);
+                mOutbox.clear();
+            }
+            for (Outgoing out : pending) {
+                send(out);
+            }
+        }
+    }
+
+    /**
+     * Serializes a message once and queues the same bytes to every client it is for. The gui of the host is handed
+     * the message as it is. A client that has fallen too far behind is dropped.
+     * 
+     * @param out The message and the clients to write it to
+     */
+    private void send(Outgoing out) {
+        if (out.mLocal != null) {
+            out.mLocal.deliver(out.mPayload);
+            return;
+        }
+        long start = System.nanoTime();
+        SerializedMessage message;
+        try {
+            message = new SerializedMessage(out.mPayload);
+        } catch (IOException e) {
+            Logger.e("in GaC, send", "Error serializing ", out.mPayload.getClass().getSimpleName());
+            return;
+        }
+        Socket[] sockets = out.mSockets;
+        if (out.mMulticastSender != null && out.mMulticastSender.send(message)) {
+            sockets = out.mUnicastSockets;
+        }
+        for (Socket socket : sockets) {
+            ClientWriter writer = mWriters.get(socket);
+            if (writer != null && !writer.offer(message)) {
+                removeSocket(socket);
+            }
+        }
+        if (out.mBroadcast) {
+            mBroadcastBytes.record(message.size());
+            mBroadcastTime.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * Creates a delta with the changes made after a version, as a client is sent it. The pile the client is looking at
+     * is sent in full even if it has not changed, since the client may only have its summary.
+     * 
+     * @param fromVersion The version
+     * @param session The session of the client
+     * @return The delta, or null if the version is too old to be remembered
+     */
+    private StateDelta createDelta(int fromVersion, Session session) {
+        BitSet changed = mHistory.changedSince(fromVersion);
+        if (changed == null) {
+            return null;
+        }
+        if (session.getLocal() != null) {
+            return new StateDelta(mGameState, fromVersion, changed);
+        }
+        int subscribed = session.getSubscribedPile();
+        if (subscribed >= 0) {
+            changed.set(subscribed);
+        }
+        return new StateDelta(mGameState, fromVersion, changed).projectFor(session.getId(), subscribed);
+    }
+
+    /**
+     * Gives the whole state as a client is sent it.
+     * 
+     * @param session The session of the client
+     * @return The state
+     */
+    private GameState stateFor(Session session) {
+        if (session.getLocal() != null) {
+            // The gui of the host shares the published states with the game
+            return mGameState;
+        }
+        return mGameState.projectFor(session.getId(), session.getSubscribedPile());
+    }
+
+    /**
+     * @param sessionId The session id of a client
+     * @return The name of the histogram of the time it takes to write updates to the client, kept when the client
+     *         moves to a new ip address
+     */
+    private static String clientMetric(int sessionId) {
+        return "client." + sessionId + ".writeMicros";
+    }
+
+    /**
+     * @param sessionId The session id of a client
+     * @return The name of the round-trip time to the client, kept when the client moves to a new ip address
+     */
+    private static String rttMetric(int sessionId) {
+        return "client." + sessionId + ".rttMicros";
+    }
+
+    /**
+     * Marks piles as changed, so that they are sent out with the next update. Must be called before a pile is
+     * changed: the first time a pile is marked after an update it is replaced on the table by a copy, since the pile
+     * itself belongs to the published state.
+     * 
+     * @param positions The positions of the changed piles
+     */
+    private void markChanged(Integer... positions) {
+        for (Integer pos : positions) {
+            if (pos != null && pos >= 0 && pos < Constant.NumOfPiles && !mChangedPiles.get(pos)) {
+                mChangedPiles.set(pos);
+                Pile p = mTable.get(pos);
+                if (p != null) {
+                    mTable.set(pos, new Pile(p));
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts back the piles that have been changed since the last update as they are in the published state.
+     */
+    private void restoreChanged() {
+        List<Pile> published = mGameState.getPiles();
+        for (int i = mChangedPiles.nextSetBit(0); i >= 0; i = mChangedPiles.nextSetBit(i + 1)) {
+            mTable.set(i, published.get(i));
+        }
+        mChangedPiles.clear();
+    }
+
+    /**
+     * Creates a standard 52-card deck.
+     * 
+     * @return A pile containing the deck
+     */
+    private Pile createDeck() {
+        Pile deck = new Pile(Constant.MainDeckName);
+        for (Suit suit : Suit.values()) {
+            for (Rank rank : Rank.values()) {
+                deck.addCard(new Card(suit, rank));
+            }
+        }
+        // Put the deck at the middle of the table
+        mTable.set(Constant.MidOfTable, deck);
+        mPileNames.add(Constant.MainDeckName, Constant.MidOfTable);
+        return deck;
+    }
+
+    /**
+     * @return the gamestate
+     */
+    public GameState getGameState() {
+        return mGameState;
+    }
+
+    /**
+     * Gives the handle of the table, which can be passed between activities to find the game with getHosted. The
+     * table is registered the first time its handle is asked for, and is forgotten when the host leaves.
+     * 
+     * @return The handle, never zero
+     */
+    public int getHandle() {
+        synchronized (sHostedTables) {
+            if (mHandle == 0) {
+                mHandle = sNextHandle++;
+                sHostedTables.put(mHandle, this);
+            }
+            return mHandle;
+        }
+    }
+
+    /**
+     * @param handle The handle of a table
+     * @return The game hosted in this process with the handle, or null if there is none
+     */
+    public static GameController getHosted(int handle) {
+        synchronized (sHostedTables) {
+            return sHostedTables.get(handle);
+        }
+    }
+
+    /**
+     * @param name The name of a pile
+     * @return The position of the pile, or null if there is no pile with the name
+     */
+    public synchronized Integer findPile(String name) {
+        return mPileNames.positionOf(name);
+    }
+
+    /**
+     * Starts recording the operations performed on the table, so that the game can be replayed with GameReplay.
+     * 
+     * @param file The file to record to
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void startRecording(File file) throws IOException {
+        stopRecording();
+        mRecorder = new GameRecorder(file);
+        mRecorder.recordKeyframe(createKeyframe());
+        Logger.d("in GaC", "Recording to ", file);
+    }
+
+    /**
+     * Stops recording the game, if it is recorded.
+     */
+    public synchronized void stopRecording() {
+        if (mRecorder != null) {
+            mRecorder.close();
+            mRecorder = null;
+        }
+    }
+
+    /**
+     * Records an operation that has been performed, along with a keyframe if it is time for one. Operations that can
+     * not change the game are not recorded. A resume of a session that was gone connected the client as a new user,
+     * so it is recorded as the connect it turned into. The recording is stopped if it can not be written.
+     * 
+     * @param op The operation
+     */
+    private void record(Operation op) {
+        if (mRecorder == null || op.getOp() == Op.sync || op.getOp() == Op.joinMulticast
+                || op.getOp() == Op.subscribe || op.getOp() == Op.unsubscribe) {
+            return;
+        }
+        if (op.getOp() == Op.resume) {
+            if (mSessionsByToken.containsKey(op.getSessionToken())) {
+                return; // The session went on where it was
+            }
+            Operation connect = new Operation(Op.connect);
+            connect.setIpAddr(op.getIpAddr());
+            op = connect;
+        }
+        try {
+            mRecorder.recordOperation(op);
+            if (mRecorder.isKeyframeDue()) {
+                mRecorder.recordKeyframe(createKeyframe());
+            }
+        } catch (IOException e) {
+            Logger.e("in GaC", "Error recording the game, recording stopped");
+            stopRecording();
+        }
+    }
+
+    /**
+     * @return A keyframe holding everything needed to go on with the game from now
+     */
+    private GameRecorder.Keyframe createKeyframe() {
+        return new GameRecorder.Keyframe(mGameState, new ArrayList<Session>(mSessionsByToken.values()),
+                mNextSessionId, mUndo);
+    }
+
+    /**
+     * Creates a GameController that is not on the network, holding the game of a keyframe.
+     * 
+     * @param keyframe The keyframe
+     * @return The GameController
+     */
+    static GameController fromKeyframe(GameRecorder.Keyframe keyframe) {
+        GameController gc = new GameController("replay", Constant.GameControllerPort, false, false, false);
+        synchronized (gc) {
+            GameState state = keyframe.getState();
+            for (int i = 0; i < Constant.NumOfPiles; i++) {
+                gc.mTable.set(i, state.getPiles().get(i));
+            }
+            gc.mGameState = state;
+            gc.mHistory.startAt(state.getVersion());
+            gc.mHostStillLeft = state.getHostStillLeft();
+            gc.mPileNames.rebuild(gc.mTable);
+            gc.rebuildOwnerIndex();
+            for (int i = 0; i < keyframe.getSessionIds().length; i++) {
+                Session session = new Session(gc.newToken(), keyframe.getSessionIds()[i],
+                        keyframe.getSessionIps()[i]);
+                gc.mSessionsByIp.put(session.getIpAddr(), session);
+                gc.mSessionsByToken.put(session.getToken(), session);
+            }
+            gc.mNextSessionId = keyframe.getNextSessionId();
+            gc.mUndo = keyframe.getUndo();
+        }
+        return gc;
+    }
+
+    /**
+     * Performs the given operation and sends out the updated state to all guis. Records how many operations are
+     * waiting, how long this one waited and how long it took to apply. The updates are sent after the lock on the
+     * game has been released, so the time spent sending them is not counted.
+     * 
+     * @param op The operation to perform
+     */
+    public void performOperation(Operation op) {
+        mQueueDepth.record(mPendingOps.incrementAndGet());
+        long queued = System.nanoTime();
+        try {
+            synchronized (this) {
+                long start = System.nanoTime();
+                mWaitTime.record((start - queued) / 1000);
+                applyOperation(op, sessionOf(op));
+                mOpTimes[op.getOp().ordinal()].record((System.nanoTime() - start) / 1000);
+                mClients.set(mSessionsByToken.size());
+                record(op);
+            }
+        } finally {
+            mPendingOps.decrementAndGet();
+        }
+        flushUpdates();
+    }
+
+    /**
+     * Answers an operation that is not going to be performed, e.g. because the client sent too many.
+     * 
+     * @param op The operation
+     * @param reason Why it is not performed
+     */
+    public void reject(Operation op, Ack.Reason reason) {
+        synchronized (this) {
+            mRejected.increment();
+            Session sender = sessionOf(op);
+            if (op.getSeq() != 0 && sender != null) {
+                queueAck(sender, new Ack(op.getSeq(), reason, mGameState.getVersion()));
+            }
+        }
+        flushUpdates();
+    }
+
+    /**
+     * Takes part in measuring the round-trip time to a client: answers its requests, and records the time it took the
+     * echo of an answer to come back.
+     * 
+     * @param ping The request or echo from the client, holding its session token
+     */
+    public void ping(Ping ping) {
+        synchronized (this) {
+            Session session = mSessionsByToken.get(ping.getSessionToken());
+            if (session == null) {
+                return;
+            }
+            if (ping.getKind() == Ping.Kind.request) {
+                queueTo(session, new Ping(Ping.Kind.answer, ping.getClientTime(), System.nanoTime(), 0));
+            } else if (ping.getKind() == Ping.Kind.echo) {
+                RoundTripTime roundTrip = mMetrics.roundTrip(rttMetric(session.getId()));
+                roundTrip.sample((System.nanoTime() - ping.getHostTime()) / 1000);
+                session.setRoundTrip(roundTrip);
+                return;
+            }
+        }
+        flushUpdates();
+    }
+
+    /**
+     * @return The number of operations waiting to be performed
+     */
+    public int getPendingOps() {
+        return mPendingOps.get();
+    }
+
+    /**
+     * Performs an operation read from a recorded game. The operation is performed by the user with the recorded
+     * session id, and shuffles use the recorded seeds.
+     * 
+     * @param op The recorded operation
+     */
+    void replayOperation(Operation op) {
+        synchronized (this) {
+            mReplaying = true;
+            try {
+                applyOperation(op, sessionById(op.getSessionId()));
+            } finally {
+                mReplaying = false;
+            }
+        }
+        flushUpdates();
     }
 
     /**
-     * Sends the gameState to all the clients.
+     * Applies an operation and sends out a single update if it changed the game. If the client numbered the
+     * operation it is answered with an ack, after the update.
+     * 
+     * @param op The operation to apply
+     * @param sender The session of the user performing the operation, or null if it has none
      */
-    public void sendUpdatedState() {
-        ObjectOutputStream out = null;
-        Log.d("in GaC, sendUpdatedState ", "Sockets left: " + mAllGameToGuiSockets.size());
+    private void applyOperation(Operation op, Session sender) {
+        op.setSessionId(sender == null ? -1 : sender.getId());
+        GameState before = mGameState;
+        mRejection = null;
+        try {
+            applyOperation(op, sender, before);
+        } catch (RuntimeException e) {
+            // A malformed operation, e.g. with a position outside the table
+            Logger.e("in GaC", "Invalid operation rejected: ", e);
+            rollBack();
+            mRejection = Ack.Reason.invalid;
+        }
+        // Put back the piles changed by an operation that was not performed
+        restoreChanged();
+
+        if (mRejection != null) {
+            mRejected.increment();
+        }
+        if (op.getSeq() != 0 && sender != null && op.getOp() != Op.connect && op.getOp() != Op.disconnect
+                && op.getOp() != Op.resume) {
+            Ack.Reason reason = mRejection == null ? Ack.Reason.applied : mRejection;
+            queueAck(sender, new Ack(op.getSeq(), reason, mGameState.getVersion()));
+        }
+    }
+
+    /**
+     * Applies an operation and sends out a single update if it changed the game. Leaves the reason in mRejection if
+     * the operation was not performed.
+     * 
+     * @param op The operation to apply
+     * @param sender The session of the user performing the operation, or null if it has none
+     * @param before The state before the operation
+     */
+    private void applyOperation(Operation op, Session sender, GameState before) {
+        switch (op.getOp()) {
+
+        case connect:
+            connectClient(op.getIpAddr());
+            break;
+
+        case disconnect:
+            disconnectClient(sender, op.getIpAddr());
+            break;
+
+        case resume:
+            resumeClient(op);
+            break;
+
+        case sync:
+            syncClient(sender, op.getVersion());
+            break;
+
+        case joinMulticast:
+            joinMulticast(sender);
+            break;
+
+        case subscribe:
+            subscribe(sender, op.getPile1());
+            break;
+
+        case unsubscribe:
+            if (sender != null && op.getPile1() != null && sender.getSubscribedPile() == op.getPile1()) {
+                sender.setSubscribedPile(-1);
+            }
+            break;
+
+        case undo:
+            if (mayRestore(mUndo.peekUndo(), op.getSessionId())) {
+                restoreTo(mUndo.undo(before));
+                sendUpdatedState();
+            } else {
+                mRejection = mUndo.peekUndo() == null ? Ack.Reason.noEffect : Ack.Reason.notAllowed;
+            }
+            break;
 
-        for (Socket socket : mAllGameToGuiSockets) {
-            try {
-                out = new ObjectOutputStream(socket.getOutputStream());
-                out.writeObject(mGameState);
-                Log.d("sendUpdated GaC", "State written into socket "
-                        + socket.getRemoteSocketAddress().toString() + "host still left: "
-                        + mGameState.getHostStillLeft());
-                out.flush();
-            } catch (IOException e) {
-                Log.e("in GaC, sendUpdatedState", "Error sending updated state");
+        case redo:
+            if (mayRestore(mUndo.peekRedo(), op.getSessionId())) {
+                restoreTo(mUndo.redo(before));
+                sendUpdatedState();
+            } else {
+                mRejection = mUndo.peekRedo() == null ? Ack.Reason.noEffect : Ack.Reason.notAllowed;
             }
-        }
-    }
+            break;
 
-    /**
-     * Creates a standard 52-card deck.
-     * 
-     * @return A pile containing the deck
-     */
-    private Pile createDeck() {
-        Pile deck = new Pile(Constant.MainDeckName);
-        mPileNames.add(Constant.MainDeckName);
-        for (Suit suit : Suit.values()) {
-            for (Rank rank : Rank.values()) {
-                deck.addCard(new Card(suit, rank));
+        case batch:
+            if (applyBatch(op)) {
+                sendUpdatedState();
+                mUndo.record(before, mGameState);
             }
-        }
-        // Put the deck at the middle of the table
-        mTable.set(Constant.MidOfTable, deck);
-        return deck;
-    }
+            break;
 
-    /**
-     * @return the gamestate
-     */
-    public GameState getGameState() {
-        return mGameState;
+        default:
+            if (applyGameOperation(op)) {
+                sendUpdatedState();
+                mUndo.record(before, mGameState);
+            } else if (mRejection == null) {
+                mRejection = Ack.Reason.noEffect;
+            }
+        }
     }
 
     /**
-     * Performs the given operation and sends out the updated state to all guis.
+     * Applies an operation on the cards and piles, if the user is allowed to perform it. Does not send out the
+     * changes.
      * 
-     * @param op The operation to perform
+     * @param op The operation to apply
+     * @return Whether the operation was performed
      */
-    public synchronized void performOperation(Operation op) {
+    private boolean applyGameOperation(Operation op) {
         // Make sure the user is allowed to perform the operation
-        String ipAddr = op.getIpAddr();
         Integer pilePosition = op.getPile1();
         if (pilePosition != null) {
             Pile p = mTable.get(pilePosition);
-            if (p != null) {
-                if (!p.getOwner().equals(Constant.PileHasNoOwner) && !p.getOwner().equals(ipAddr)) {
-                    return; // The user was not allowed to perform the operation
-                }
+            if (p != null && !mayTouch(p, op.getSessionId())) {
+                mRejection = Ack.Reason.notAllowed;
+                return false; // The user was not allowed to perform the operation
+            }
+            if (p == null && op.getOp() != Op.create) {
+                mRejection = Ack.Reason.noSuchPile;
+                return false;
             }
         }
 
         switch (op.getOp()) {
 
         case move:
-            moveCard(mTable.get(op.getPile1()), mTable.get(op.getPile2()), op.getCard());
-            break;
+            markChanged(op.getPile1(), op.getPile2());
+            return moveCard(mTable.get(op.getPile1()), mTable.get(op.getPile2()), op.getCard());
 
         case flip:
-            flipCard(mTable.get(op.getPile1()), op.getCard());
-            break;
+            markChanged(op.getPile1());
+            return flipCard(mTable.get(op.getPile1()), op.getCard());
 
         case protect:
-            protectPile(mTable.get(op.getPile1()), op.getName());
-            break;
+            markChanged(op.getPile1());
+            return protectPile(op.getPile1(), op.getSessionId());
 
         case unprotect:
-            unProtectPile(mTable.get(op.getPile1()), op.getName());
-            break;
+            markChanged(op.getPile1());
+            return unProtectPile(op.getPile1(), op.getSessionId());
 
         case create:
-            createPile(op.getPile1(), op.getName());
-            break;
+            markChanged(op.getPile1());
+            return createPile(op.getPile1(), op.getName());
 
         case rename:
-            renamePile(op.getPile1(), op.getName());
-            break;
+            markChanged(op.getPile1());
+            return renamePile(op.getPile1(), op.getName());
 
         case shuffle:
-            shufflePile(op.getPile1());
-            break;
+            markChanged(op.getPile1());
+            if (!mReplaying) {
+                op.setSeed(mRandom.nextLong());
+            }
+            return shufflePile(op.getPile1(), op.getSeed());
 
         case delete:
-            deletePile(op.getPile1());
-            break;
+            markChanged(op.getPile1());
+            return deletePile(op.getPile1());
 
         case faceUp:
-            faceUpPile(op.getPile1());
-            break;
+            markChanged(op.getPile1());
+            return faceUpPile(op.getPile1());
 
         case faceDown:
-            faceDownPile(op.getPile1());
-            break;
+            markChanged(op.getPile1());
+            return faceDownPile(op.getPile1());
 
         case moveAll:
-            moveAllFromPile(mTable.get(op.getPile1()), mTable.get(op.getPile2()));
-            break;
+            markChanged(op.getPile1(), op.getPile2());
+            return moveAllFromPile(mTable.get(op.getPile1()), mTable.get(op.getPile2()));
 
         case pileMove:
-            movePile(op.getPile1(), op.getPile2());
-            break;
+            markChanged(op.getPile1(), op.getPile2());
+            return movePile(op.getPile1(), op.getPile2());
 
-        case restart:
-            restartGame();
-            break;
+        case deal:
+            markChanged(op.getPile1());
+            if (op.getTargets() != null) {
+                markChanged(op.getTargets().toArray(new Integer[0]));
+            }
+            return dealCards(op.getPile1(), op.getTargets(), op.getCount());
 
-        case connect:
-            connectClient(op.getIpAddr());
-            break;
+        case gather:
+            markChanged(op.getPile1());
+            return gatherPiles(op.getPile1(), op.getSessionId());
+
+        case restart:
+            return restartGame();
 
-        case disconnect:
-            disconnectClient(op.getIpAddr());
-            break;
         default:
+            return false; // Not an operation on the game
+        }
+    }
+
+    /**
+     * Applies all operations of a batch, in order, as one. If any of them is not allowed or has no effect the game is
+     * put back as it was before the batch.
+     * 
+     * @param batch The batch operation
+     * @return Whether all the operations were performed
+     */
+    private boolean applyBatch(Operation batch) {
+        if (batch.getOperations() == null || batch.getOperations().isEmpty()) {
+            mRejection = Ack.Reason.invalid;
+            return false;
+        }
+        for (Operation op : batch.getOperations()) {
+            // The operations are performed by the user that sent the batch
+            op.setIpAddr(batch.getIpAddr());
+            op.setSessionId(batch.getSessionId());
+            boolean performed;
+            try {
+                performed = applyGameOperation(op);
+            } catch (RuntimeException e) {
+                performed = false;
+                mRejection = Ack.Reason.invalid;
+            }
+            if (!performed) {
+                Logger.d("in GaC", "Batch rolled back at ", op.getOp());
+                rollBack();
+                if (mRejection == null) {
+                    mRejection = Ack.Reason.noEffect;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the game back as it is in the published state, after an operation that was only partly performed.
+     */
+    private void rollBack() {
+        restoreChanged();
+        mRestarted = false;
+        mPileNames.rebuild(mTable);
+        rebuildOwnerIndex();
+    }
+
+    /**
+     * Checks if a user may take the game back or forward to another version, which is only allowed if the piles that
+     * would change are not protected by someone else. Protection by users that have left the game does not count, as
+     * it is removed when the version is restored.
+     * 
+     * @param target The version to go to, may be null
+     * @param sessionId The session id of the user
+     * @return Whether the user may go to the version
+     */
+    private boolean mayRestore(GameState target, int sessionId) {
+        if (target == null) {
+            return false;
+        }
+        List<Pile> piles = target.getPiles();
+        for (int i = 0; i < mTable.size(); i++) {
+            Pile current = mTable.get(i);
+            Pile restored = piles.get(i);
+            if (current != restored && (current != null && !mayRestore(current, sessionId)
+                    || restored != null && !mayRestore(restored, sessionId))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param p A pile that would change if a user went to another version
+     * @param sessionId The session id of the user
+     * @return Whether the pile is not protected by someone else that is still in the game
+     */
+    private boolean mayRestore(Pile p, int sessionId) {
+        return mayTouch(p, sessionId) || !hasSession(p.getOwner());
+    }
+
+    /**
+     * Puts the piles of another version of the game on the table. The piles are published already and are shared
+     * with that version. Piles protected by users that have left the game are unprotected.
+     * 
+     * @param target The version to go to
+     */
+    private void restoreTo(GameState target) {
+        List<Pile> piles = target.getPiles();
+        for (int i = 0; i < mTable.size(); i++) {
+            if (mTable.get(i) != piles.get(i)) {
+                mTable.set(i, piles.get(i));
+                mChangedPiles.set(i);
+            }
+        }
+        mPileNames.rebuild(mTable);
+        rebuildOwnerIndex();
+
+        ArrayList<Integer> leftOwners = new ArrayList<Integer>();
+        for (Integer owner : mPilesByOwner.keySet()) {
+            if (!hasSession(owner)) {
+                leftOwners.add(owner);
+            }
+        }
+        for (Integer owner : leftOwners) {
+            BitSet owned = mPilesByOwner.remove(owner);
+            for (int i = owned.nextSetBit(0); i >= 0; i = owned.nextSetBit(i + 1)) {
+                Pile copy = new Pile(mTable.get(i));
+                copy.setOwner(Constant.PileHasNoOwner);
+                mTable.set(i, copy);
+                mChangedPiles.set(i);
+            }
         }
     }
 
+    /**
+     * @param sessionId A session id
+     * @return Whether a user with the session id is in the game
+     */
+    private boolean hasSession(int sessionId) {
+        return sessionById(sessionId) != null;
+    }
+
+    /**
+     * @param sessionId A session id
+     * @return The session of the user with the session id, or null if there is no such user in the game
+     */
+    private Session sessionById(int sessionId) {
+        for (Session session : mSessionsByToken.values()) {
+            if (session.getId() == sessionId) {
+                return session;
+            }
+        }
+        return null;
+    }
+
     /**
      * Moves a card, cardToMove, from srcPile to destPile.
      * 
      * @param srcPile The pile to move from
      * @param destPile The pile to move to
      * @param cardToMove The card to move
+     * @return Whether the card was moved
      */
-    private void moveCard(Pile srcPile, Pile destPile, Card cardToMove) {
+    private boolean moveCard(Pile srcPile, Pile destPile, Card cardToMove) {
         if (destPile != null && srcPile != null) {
-            for (int i = 0; i < srcPile.getSize(); i++) {
-                Card card = srcPile.getCard(i);
-                if (card.equals(cardToMove)) {
-                    srcPile.takeCard(i);
-                    destPile.addCard(card);
-                    sendUpdatedState();
-                    return;
-                }
+            int i = srcPile.indexOf(cardToMove);
+            if (i >= 0) {
+                destPile.addCard(srcPile.takeCard(i));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deals cards from the top of a pile, one at a time to each of the target piles in turn, and sends out a single
+     * update when done.
+     * 
+     * @param srcPos The position of the pile to deal from
+     * @param targets The positions of the piles to deal to
+     * @param count The number of cards to deal in total, fewer are dealt if the pile runs out
+     * @return Whether any cards were dealt
+     */
+    private boolean dealCards(int srcPos, List<Integer> targets, int count) {
+        Pile srcPile = mTable.get(srcPos);
+        if (srcPile == null || targets == null) {
+            return false;
+        }
+        ArrayList<Pile> destPiles = new ArrayList<Pile>();
+        for (Integer pos : targets) {
+            if (pos != null && pos >= 0 && pos < Constant.NumOfPiles && pos != srcPos
+                    && mTable.get(pos) != null) {
+                destPiles.add(mTable.get(pos));
             }
         }
+        if (destPiles.isEmpty()) {
+            return false;
+        }
+        int dealt = 0;
+        while (dealt < count && srcPile.getSize() > 0) {
+            destPiles.get(dealt % destPiles.size()).addCard(srcPile.takeCard(0));
+            dealt++;
+        }
+        return dealt > 0;
     }
 
     /**
@@ -242,41 +1244,87 @@ public class GameController {
      * 
      * @param currentPile The pile where the card is
      * @param cardToFlip The card to flip
+     * @return Whether the card was flipped
      */
-    private void flipCard(Pile currentPile, Card cardToFlip) {
-        for (int i = 0; i < currentPile.getSize(); i++) {
-            Card c = currentPile.getCard(i);
-            if (c.equals(cardToFlip)) {
-                c.flipFace();
-                sendUpdatedState();
-                return;
-            }
-        }
+    private boolean flipCard(Pile currentPile, Card cardToFlip) {
+        return currentPile != null && currentPile.flipCard(cardToFlip);
     }
 
     /**
      * Protects a pile.
      * 
-     * @param pileToProtect The pile to protect
-     * @param name The name (ip address) of the user protecting it
+     * @param pilePos The position of the pile to protect
+     * @param sessionId The session id of the user protecting it
+     * @return Whether the pile was protected
      */
-    private void protectPile(Pile pileToProtect, String name) {
-        if (pileToProtect != null) {
-            pileToProtect.setOwner(name);
-            sendUpdatedState();
+    private boolean protectPile(int pilePos, int sessionId) {
+        if (mTable.get(pilePos) != null && sessionId > Constant.PileHasNoOwner) {
+            setOwner(pilePos, sessionId);
+            return true;
         }
+        return false;
     }
 
     /**
      * Unprotects a pile.
      * 
-     * @param protectedPile The pile that is protected
-     * @param name The name (ip address) of the user unprotecting it
+     * @param pilePos The position of the pile that is protected
+     * @param sessionId The session id of the user unprotecting it
+     * @return Whether the pile was unprotected
+     */
+    private boolean unProtectPile(int pilePos, int sessionId) {
+        Pile protectedPile = mTable.get(pilePos);
+        if (protectedPile != null && protectedPile.getOwner() == sessionId) {
+            setOwner(pilePos, Constant.PileHasNoOwner);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param p A pile
+     * @param sessionId The session id of a user
+     * @return Whether the user may touch the pile, i.e. it is not protected by someone else
+     */
+    private static boolean mayTouch(Pile p, int sessionId) {
+        return p.getOwner() == Constant.PileHasNoOwner || p.getOwner() == sessionId;
+    }
+
+    /**
+     * Sets the owner of a pile and keeps track of which piles each user owns.
+     * 
+     * @param pilePos The position of the pile
+     * @param owner The session id of the new owner, or Constant.PileHasNoOwner
+     */
+    private void setOwner(int pilePos, int owner) {
+        Pile p = mTable.get(pilePos);
+        BitSet owned = mPilesByOwner.get(p.getOwner());
+        if (owned != null) {
+            owned.clear(pilePos);
+        }
+        if (p.getOwner() != owner) {
+            p.setOwner(owner);
+        }
+        if (owner != Constant.PileHasNoOwner) {
+            owned = mPilesByOwner.get(owner);
+            if (owned == null) {
+                owned = new BitSet(Constant.NumOfPiles);
+                mPilesByOwner.put(owner, owned);
+            }
+            owned.set(pilePos);
+        }
+    }
+
+    /**
+     * Rebuilds the index of which piles each user owns from the table, after the table has been replaced.
      */
-    private void unProtectPile(Pile protectedPile, String name) {
-        if (protectedPile != null && protectedPile.getOwner().equals(name)) {
-            protectedPile.setOwner(Constant.PileHasNoOwner);
-            sendUpdatedState();
+    private void rebuildOwnerIndex() {
+        mPilesByOwner.clear();
+        for (int i = 0; i < mTable.size(); i++) {
+            Pile p = mTable.get(i);
+            if (p != null && p.getOwner() != Constant.PileHasNoOwner) {
+                setOwner(i, p.getOwner());
+            }
         }
     }
 
@@ -285,15 +1333,16 @@ public class GameController {
      * 
      * @param pilePos The position on which to create the pile
      * @param nameEntered The name entered for the pile
+     * @return Whether the pile was created
      */
-    private void createPile(int pilePos, String nameEntered) {
+    private boolean createPile(int pilePos, String nameEntered) {
         if (mTable.get(pilePos) != null) {
-            return; // There was already a pile there
+            mRejection = Ack.Reason.occupied;
+            return false; // There was already a pile there
         }
-        String name = getNameForPile(nameEntered);
-        mPileNames.add(name);
+        String name = mPileNames.claim(nameEntered, pilePos);
         mTable.set(pilePos, new Pile(name));
-        sendUpdatedState();
+        return true;
     }
 
     /**
@@ -301,100 +1350,78 @@ public class GameController {
      * 
      * @param pilePos The position of the pile to rename
      * @param nameEntered The new name entered for the pile
+     * @return Whether the pile was renamed
      */
-    private void renamePile(int pilePos, String nameEntered) {
+    private boolean renamePile(int pilePos, String nameEntered) {
         Pile pileToRename = mTable.get(pilePos);
         if (pileToRename == null) {
-            return;
-        }
-        String newName = getNameForPile(nameEntered);
-        String oldName = pileToRename.getName();
-        mPileNames.remove(oldName);
-        pileToRename.setName(newName);
-        mPileNames.add(newName);
-        sendUpdatedState();
-    }
-
-    /**
-     * Set the name of for a pile, if it already exists, the proper default pile name is returned.
-     * 
-     * @param nameEntered The name that was entered for the pile
-     * @return The name the pile should have
-     */
-    private String getNameForPile(String nameEntered) {
-        String name = "";
-        if (mPileNames.contains(nameEntered)) {
-            // Sets the next available default name
-            int defaultNo = mGameState.getDefaultPileNo();
-            do {
-                name = "Pile " + defaultNo;
-                defaultNo++;
-            } while (mGameState.getPileNames().contains(name));
-            mGameState.setDefaultPileNo(defaultNo);
-        } else if (nameEntered.equals("Pile " + mGameState.getDefaultPileNo())) {
-            name = mGameState.getDefaultPileName();
-            mGameState.setDefaultPileNo(mGameState.getDefaultPileNo() + 1);
-        } else {
-            name = nameEntered;
+            return false;
         }
-        return name;
-
+        mPileNames.release(pileToRename.getName());
+        pileToRename.setName(mPileNames.claim(nameEntered, pilePos));
+        return true;
     }
 
     /**
      * Shuffles a pile.
      * 
      * @param pilePos The position of the pile to shuffle
+     * @param seed The seed of the shuffle, the same seed gives the same order
+     * @return Whether the pile was shuffled
      */
-    private void shufflePile(int pilePos) {
+    private boolean shufflePile(int pilePos, long seed) {
         Pile pileToShuffle = mTable.get(pilePos);
         if (pileToShuffle != null) {
-            pileToShuffle.shuffle();
-            sendUpdatedState();
+            pileToShuffle.shuffle(new Random(seed));
+            return true;
         }
+        return false;
     }
 
     /**
      * Deletes a pile.
      * 
      * @param pilePosToDelete The position of the pile to delete
+     * @return Whether the pile was deleted
      */
-    private void deletePile(int pilePosToDelete) {
+    private boolean deletePile(int pilePosToDelete) {
         if (mTable.get(pilePosToDelete) != null && mTable.get(pilePosToDelete).getSize() == 0) {
-            mPileNames.remove(mTable.get(pilePosToDelete).getName());
+            setOwner(pilePosToDelete, Constant.PileHasNoOwner);
+            mPileNames.release(mTable.get(pilePosToDelete).getName());
             mTable.set(pilePosToDelete, null);
-            sendUpdatedState();
+            return true;
         }
+        return false;
     }
 
     /**
      * Faces an entire pile face up.
      * 
      * @param pilePos The position of the pile to face up
+     * @return Whether the pile was turned
      */
-    private void faceUpPile(int pilePos) {
+    private boolean faceUpPile(int pilePos) {
         Pile pileToFaceUp = mTable.get(pilePos);
         if (pileToFaceUp != null) {
-            for (Card p : pileToFaceUp.getCards()) {
-                p.setFaceUp();
-            }
-            sendUpdatedState();
+            pileToFaceUp.setFace(Face.up);
+            return true;
         }
+        return false;
     }
 
     /**
      * Faces an entire pile face down.
      * 
      * @param pilePos The position of the pile to face down
+     * @return Whether the pile was turned
      */
-    private void faceDownPile(int pilePos) {
+    private boolean faceDownPile(int pilePos) {
         Pile pileToFaceDown = mTable.get(pilePos);
         if (pileToFaceDown != null) {
-            for (Card p : pileToFaceDown.getCards()) {
-                p.setFaceDown();
-            }
-            sendUpdatedState();
+            pileToFaceDown.setFace(Face.down);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -402,16 +1429,42 @@ public class GameController {
      * 
      * @param fromPile The pile to move from
      * @param toPile The pile to move to
+     * @return Whether the cards were moved
      */
-    private void moveAllFromPile(Pile fromPile, Pile toPile) {
+    private boolean moveAllFromPile(Pile fromPile, Pile toPile) {
         if (fromPile != null && toPile != null) {
-            int totalCards = fromPile.getSize();
-            for (int i = totalCards; i > 0; i--) {
-                Card card = fromPile.takeCard(i - 1);
-                toPile.addCard(card);
+            toPile.addPile(fromPile);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gathers the cards of all other piles in one pile, leaving the other piles empty. Piles protected by someone
+     * else than the user are left alone.
+     * 
+     * @param pilePos The position of the pile to gather the cards in
+     * @param sessionId The session id of the user gathering the cards
+     * @return Whether any cards were gathered
+     */
+    private boolean gatherPiles(int pilePos, int sessionId) {
+        Pile toPile = mTable.get(pilePos);
+        if (toPile == null) {
+            return false;
+        }
+        boolean gathered = false;
+        for (int i = 0; i < mTable.size(); i++) {
+            Pile p = mTable.get(i);
+            if (i == pilePos || p == null || p.getSize() == 0) {
+                continue;
+            }
+            if (mayTouch(p, sessionId)) {
+                markChanged(i);
+                toPile.addPile(mTable.get(i));
+                gathered = true;
             }
-            sendUpdatedState();
         }
+        return gathered;
     }
 
     /**
@@ -419,31 +1472,42 @@ public class GameController {
      * 
      * @param pileToMovePos The position to move from
      * @param pileDestinationPos The position to move to
+     * @return Whether the pile was moved
      */
-    private void movePile(int pileToMovePos, int pileDestinationPos) {
+    private boolean movePile(int pileToMovePos, int pileDestinationPos) {
         Pile pileToMove = mTable.get(pileToMovePos);
         Pile destination = mTable.get(pileDestinationPos);
         if (pileToMove != null && destination == null) {
+            int owner = pileToMove.getOwner();
+            setOwner(pileToMovePos, Constant.PileHasNoOwner);
             mTable.set(pileDestinationPos, pileToMove);
             mTable.set(pileToMovePos, destination);
-            sendUpdatedState();
+            setOwner(pileDestinationPos, owner);
+            mPileNames.move(pileToMove.getName(), pileDestinationPos);
+            return true;
         }
+        if (pileToMove != null) {
+            mRejection = Ack.Reason.occupied;
+        }
+        return false;
     }
 
     /**
      * Restarts the game.
+     * 
+     * @return Always true
      */
-    private void restartGame() {
+    private boolean restartGame() {
         mTable.clear();
         for (int i = 0; i < Constant.NumOfPiles; i++) {
             mTable.add(i, null);
         }
         mPileNames.clear();
+        mPilesByOwner.clear();
         createDeck();
-        mGameState.setDefaultPileNo(1);
-        mGameState.setIsRestarted(true);
-        sendUpdatedState();
-        mGameState.setIsRestarted(false);
+        mChangedPiles.set(0, Constant.NumOfPiles);
+        mRestarted = true;
+        return true;
     }
 
     /**
@@ -452,37 +1516,306 @@ public class GameController {
      * @param clientIpAddr The ip address of the client
      */
     private void connectClient(String clientIpAddr) {
-        GameToGuiConnection connection = new GameToGuiConnection(clientIpAddr, mGuiPort, this);
-        new Thread(connection).start();
-        mGameToGuiThreads.put(clientIpAddr, connection);
+        Session session = new Session(newToken(), mNextSessionId++, clientIpAddr);
+        mSessionsByIp.put(clientIpAddr, session);
+        mSessionsByToken.put(session.getToken(), session);
+        if (mLocalConnection != null && clientIpAddr.equals(IpFinder.LOOP_BACK)) {
+            // The gui of the host is in this process, it needs no socket
+            session.setLocal(mLocalConnection);
+            mLocalSession = session;
+            queueTo(session, new SessionInfo(session.getToken(), session.getId(), mTableId, mGameState));
+        } else if (mGameListener != null) {
+            openConnection(session);
+        }
+    }
+
+    /**
+     * Lets the gui of the host, running in the same process, take the place of the client with the loop back
+     * address. The operations it sends are performed as if they came from that address.
+     * 
+     * @param connection The connection to the gui
+     */
+    public synchronized void setLocalConnection(LocalConnection connection) {
+        mLocalConnection = connection;
+    }
+
+    /**
+     * @return A new session token, not zero and not used by any session
+     */
+    private long newToken() {
+        long token;
+        do {
+            token = mRandom.nextLong();
+        } while (token == 0 || mSessionsByToken.containsKey(token));
+        return token;
+    }
+
+    /**
+     * Opens a new connection for sending updates to a client. Connecting is quick, so if all the connection threads
+     * are busy it gets a thread of its own rather than leaving a client that was let in without updates.
+     * 
+     * @param session The session of the client
+     */
+    private void openConnection(Session session) {
+        GameToGuiConnection connection = new GameToGuiConnection(session, mGuiPort, this);
+        session.setConnection(connection);
+        String name = "Connect " + session.getIpAddr();
+        try {
+            ConnectionExecutor.get().execute(connection, name);
+        } catch (RejectedExecutionException e) {
+            Logger.e("in GaC", "No thread free for connecting to ", session.getIpAddr());
+            new Thread(connection, name).start();
+        }
+    }
+
+    /**
+     * Resumes the session of a client that has lost its connection. The client keeps its session id, and with it its
+     * protected piles, even if it came back with a new ip address, and is sent only the updates it missed.
+     * 
+     * @param op The resume operation, holding the session token and the last version the client saw
+     */
+    private void resumeClient(Operation op) {
+        Session session = mSessionsByToken.get(op.getSessionToken());
+        if (session == null) {
+            // The session is gone, start over
+            connectClient(op.getIpAddr());
+            return;
+        }
+        if (session.getConnection() != null) {
+            session.getConnection().end();
+        }
+        session.setSocket(null);
+        String oldIpAddr = session.getIpAddr();
+        String newIpAddr = op.getIpAddr();
+        if (!oldIpAddr.equals(newIpAddr)) {
+            if (mSessionsByIp.get(oldIpAddr) == session) {
+                mSessionsByIp.remove(oldIpAddr);
+            }
+            mSessionsByIp.put(newIpAddr, session);
+            session.setIpAddr(newIpAddr);
+            mGameListener.release(oldIpAddr);
+        }
+        session.setResumeVersion(op.getVersion());
+        openConnection(session);
+        Logger.d("in GaC", "Resumed: ", newIpAddr);
+    }
+
+    /**
+     * Finds the session of the client that sent an operation, by its token or, for a client that has not been given
+     * its token yet, by its ip address.
+     * 
+     * @param op The operation
+     * @return The session, or null if the client has none
+     */
+    private Session sessionOf(Operation op) {
+        Session session = null;
+        if (op.getSessionToken() != 0) {
+            session = mSessionsByToken.get(op.getSessionToken());
+        }
+        if (session == null && op.getIpAddr() != null) {
+            session = mSessionsByIp.get(op.getIpAddr());
+        }
+        return session;
+    }
+
+    /**
+     * Starts sending updates to a client through the multicast group instead of its own connection.
+     * 
+     * @param session The session of the client
+     */
+    private void joinMulticast(Session session) {
+        if (mMulticastSender == null || session == null) {
+            return;
+        }
+        session.setMulticast(true);
+        if (session.getSocket() != null) {
+            mMulticastSockets.add(session.getSocket());
+        }
+    }
+
+    /**
+     * Sends a client that has missed updates what it has missed, or the whole state if it has missed too much.
+     * 
+     * @param session The session of the client
+     * @param version The last version the client saw
+     */
+    private void syncClient(Session session, int version) {
+        if (session == null) {
+            return;
+        }
+        // The client is sent the latest version, the others must get there first
+        broadcastUnsent();
+        StateDelta delta = createDelta(version, session);
+        queueTo(session, delta != null ? delta : stateFor(session));
+    }
+
+    /**
+     * Starts sending a client all the cards of a pile instead of its summary, and sends it the cards right away. The
+     * client is looking at one pile at a time, so it stops getting the cards of the pile it looked at before.
+     * 
+     * @param session The session of the client
+     * @param position The position of the pile
+     */
+    private void subscribe(Session session, Integer position) {
+        if (session == null || position == null || position < 0 || position >= Constant.NumOfPiles) {
+            return;
+        }
+        session.setSubscribedPile(position);
+        if (session.getLocal() == null) {
+            syncClient(session, mGameState.getVersion());
+        }
     }
 
     /**
      * Disconnect a client from the game.
      * 
+     * @param session The session of the client, or null if it has none
      * @param clientIpAddr The ip address of the client
      */
-    private void disconnectClient(String clientIpAddr) {
-        GameToGuiConnection conn = mGameToGuiThreads.get(clientIpAddr);
-        conn.end();
-        mGameToGuiThreads.remove(clientIpAddr);
+    private void disconnectClient(Session session, String clientIpAddr) {
+        if (session != null) {
+            if (mSessionsByIp.get(session.getIpAddr()) == session) {
+                mSessionsByIp.remove(session.getIpAddr());
+            }
+            mSessionsByToken.remove(session.getToken());
+            mMetrics.remove(clientMetric(session.getId()));
+            mMetrics.remove(rttMetric(session.getId()));
+            if (session.getConnection() != null) {
+                session.getConnection().end();
+            }
+        }
 
-        mGameListener.end(clientIpAddr);
-        if (clientIpAddr.equals(IpFinder.LOOP_BACK)) {
-            Log.d("in GaC", "Host leaving");
-            mGameState.setHostStillLeft(false);
-            sendUpdatedState();
-            mAllGameToGuiSockets.clear();
+        if (mGameListener != null && mDedicated) {
+            // Keep listening for players, the table stays open
+            mGameListener.release(clientIpAddr);
+        } else if (mGameListener != null) {
+            mGameListener.end(clientIpAddr);
+        }
+        if (!mDedicated && clientIpAddr.equals(IpFinder.LOOP_BACK)) {
+            Logger.d("in GaC", "Host leaving");
+            endTable();
         }
         // Remove ownership of piles for the client
-        for (Pile p : mTable) {
-            if (p != null) {
-                if (p.getOwner().equals(clientIpAddr)) {
-                    p.setOwner(Constant.PileHasNoOwner);
-                }
+        BitSet owned = session == null ? null : mPilesByOwner.remove(session.getId());
+        if (owned != null) {
+            for (int i = owned.nextSetBit(0); i >= 0; i = owned.nextSetBit(i + 1)) {
+                markChanged(i);
+                mTable.get(i).setOwner(Constant.PileHasNoOwner);
             }
         }
         sendUpdatedState();
-        Log.d("in GaC", "Disconnected: " + clientIpAddr);
+        Logger.d("in GaC", "Disconnected: ", clientIpAddr);
+    }
+
+    /**
+     * Ends the table: stops announcing and recording it, and tells the clients that it is gone.
+     */
+    private void endTable() {
+        if (mHostAnnouncer != null) {
+            mHostAnnouncer.end();
+        }
+        if (!mReplaying) {
+            stopRecording();
+        }
+        mMetrics.unregister();
+        if (mMulticastSender != null) {
+            mMulticastSender.end();
+            mMulticastSender = null;
+        }
+        mHostStillLeft = false;
+        sendUpdatedState();
+        if (mCoalescer != null) {
+            mCoalescer.shutdown();
+        }
+        mAllGameToGuiSockets.clear();
+        mLocalSession = null;
+        synchronized (sHostedTables) {
+            sHostedTables.remove(mHandle);
+        }
+        mMulticastSockets.clear();
+    }
+
+    /**
+     * Closes a dedicated table, telling the players that it is gone and no longer listening for them.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!mHostStillLeft) {
+                return;
+            }
+            Logger.d("in GaC", "Closing the table");
+            if (mGameListener != null) {
+                // Ending the connection from the loop back address also closes the server socket
+                mGameListener.end(IpFinder.LOOP_BACK);
+            }
+            endTable();
+        }
+        flushUpdates();
+        // Give the players a moment to get the last update
+        long deadline = System.currentTimeMillis() + Constant.DrainTimeout;
+        for (ClientWriter writer : mWriters.values()) {
+            writer.awaitWritten(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * A message waiting to be written, along with the clients it should be written to.
+     */
+    private static class Outgoing {
+        private final Serializable    mPayload;
+        private final Socket[]        mSockets;
+        private final Socket[]        mUnicastSockets;
+        private final MulticastSender mMulticastSender;
+        private final LocalConnection mLocal;
+        private final boolean         mBroadcast;
+
+        /**
+         * A message to a single client.
+         * 
+         * @param payload The message
+         * @param socket The socket connected to the client
+         */
+        Outgoing(Serializable payload, Socket socket) {
+            mPayload = payload;
+            mSockets = new Socket[] { socket };
+            mUnicastSockets = mSockets;
+            mMulticastSender = null;
+            mLocal = null;
+            mBroadcast = false;
+        }
+
+        /**
+         * A message to the gui of the host, handed over without serializing it.
+         * 
+         * @param payload The message
+         * @param local The connection to the gui
+         */
+        Outgoing(Serializable payload, LocalConnection local) {
+            mPayload = payload;
+            mSockets = new Socket[0];
+            mUnicastSockets = mSockets;
+            mMulticastSender = null;
+            mLocal = local;
+            mBroadcast = false;
+        }
+
+        /**
+         * An update to all clients. The lists of clients are copied, so they can be changed once the update has been
+         * queued.
+         * 
+         * @param payload The update
+         * @param sockets The sockets connected to all the clients
+         * @param unicastSockets The sockets of the clients that do not get the update if it is multicast
+         * @param multicastSender The sender to multicast the update with, or null to write it to every client
+         */
+        Outgoing(Serializable payload, List<Socket> sockets, List<Socket> unicastSockets,
+                MulticastSender multicastSender) {
+            mPayload = payload;
+            mSockets = sockets.toArray(new Socket[sockets.size()]);
+            mUnicastSockets = unicastSockets.toArray(new Socket[unicastSockets.size()]);
+            mMulticastSender = multicastSender;
+            mLocal = null;
+            mBroadcast = true;
+        }
     }
 }
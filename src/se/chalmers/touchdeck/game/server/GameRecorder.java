@@ -0,0 +1,303 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import se.chalmers.touchdeck.game.server.Operation.Op;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.network.SerializedMessage;
+
+/**
+ * Records the operations performed on a table to a file, with the time they were performed, so that the game can be
+ * replayed with GameReplay. Every now and then the whole game is written as a keyframe, so that a replay can start
+ * from the closest keyframe instead of from the beginning.
+ * 
+ * The file starts with a header (magic number, format version and the wall clock time the recording started) followed
+ * by records. A record is a kind byte and the milliseconds since the start, followed by an operation or a keyframe.
+ * Operations are written field by field, only the fields that are set.
+ * 
+ * @author group17
+ */
+public class GameRecorder {
+    static final int                Magic          = 0x54445250; // "TDRP"
+    static final byte               FormatVersion  = 1;
+    static final byte               KindOperation  = 0;
+    static final byte               KindKeyframe   = 1;
+
+    // The fields of an operation that are set
+    private static final int        FieldPile1     = 1;
+    private static final int        FieldPile2     = 1 << 1;
+    private static final int        FieldCard      = 1 << 2;
+    private static final int        FieldName      = 1 << 3;
+    private static final int        FieldIpAddr    = 1 << 4;
+    private static final int        FieldCount     = 1 << 5;
+    private static final int        FieldTargets   = 1 << 6;
+    private static final int        FieldSeed      = 1 << 7;
+    private static final int        FieldOps       = 1 << 8;
+
+    private final DataOutputStream  mOut;
+    private final long              mStart;
+    private long                    mLastKeyframe  = Long.MIN_VALUE;
+
+    /**
+     * Creates a new recording.
+     * 
+     * @param file The file to record to, it is overwritten
+     * @throws IOException If the file could not be written
+     */
+    public GameRecorder(File file) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        mStart = System.nanoTime();
+        mOut.writeInt(Magic);
+        mOut.writeByte(FormatVersion);
+        mOut.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Records an operation that has been performed.
+     * 
+     * @param op The operation
+     * @throws IOException If the operation could not be written
+     */
+    public void recordOperation(Operation op) throws IOException {
+        mOut.writeByte(KindOperation);
+        mOut.writeInt(elapsedMillis());
+        writeOperation(mOut, op);
+    }
+
+    /**
+     * @return Whether it is time to record a keyframe
+     */
+    public boolean isKeyframeDue() {
+        return mLastKeyframe == Long.MIN_VALUE || elapsedMillis() - mLastKeyframe >= Constant.ReplayKeyframeInterval;
+    }
+
+    /**
+     * Records the whole game.
+     * 
+     * @param keyframe The game
+     * @throws IOException If the keyframe could not be written
+     */
+    public void recordKeyframe(Keyframe keyframe) throws IOException {
+        int time = elapsedMillis();
+        byte[] bytes = new SerializedMessage(keyframe).getBytes();
+        mOut.writeByte(KindKeyframe);
+        mOut.writeInt(time);
+        mOut.writeInt(bytes.length);
+        mOut.write(bytes);
+        mOut.flush();
+        mLastKeyframe = time;
+    }
+
+    /**
+     * Ends the recording.
+     */
+    public void close() {
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            // The recording is over anyway
+        }
+    }
+
+    /**
+     * @return The milliseconds since the recording started
+     */
+    private int elapsedMillis() {
+        return (int) ((System.nanoTime() - mStart) / 1000000);
+    }
+
+    /**
+     * Writes an operation, only the fields that are set.
+     * 
+     * @param out The output to write to
+     * @param op The operation
+     * @throws IOException If the operation could not be written
+     */
+    static void writeOperation(DataOutput out, Operation op) throws IOException {
+        int fields = 0;
+        fields |= op.getPile1() != null ? FieldPile1 : 0;
+        fields |= op.getPile2() != null ? FieldPile2 : 0;
+        fields |= op.getCard() != null ? FieldCard : 0;
+        fields |= op.getName() != null ? FieldName : 0;
+        fields |= op.getIpAddr() != null ? FieldIpAddr : 0;
+        fields |= op.getCount() != 0 ? FieldCount : 0;
+        fields |= op.getTargets() != null ? FieldTargets : 0;
+        fields |= op.getSeed() != 0 ? FieldSeed : 0;
+        fields |= op.getOperations() != null ? FieldOps : 0;
+
+        out.writeByte(op.getOp().ordinal());
+        out.writeInt(op.getSessionId());
+        out.writeShort(fields);
+        if (op.getPile1() != null) {
+            out.writeByte(op.getPile1());
+        }
+        if (op.getPile2() != null) {
+            out.writeByte(op.getPile2());
+        }
+        if (op.getCard() != null) {
+            out.writeByte(op.getCard().getIndex());
+        }
+        if (op.getName() != null) {
+            out.writeUTF(op.getName());
+        }
+        if (op.getIpAddr() != null) {
+            out.writeUTF(op.getIpAddr());
+        }
+        if (op.getCount() != 0) {
+            out.writeInt(op.getCount());
+        }
+        if (op.getTargets() != null) {
+            out.writeByte(op.getTargets().size());
+            for (Integer target : op.getTargets()) {
+                out.writeByte(target);
+            }
+        }
+        if (op.getSeed() != 0) {
+            out.writeLong(op.getSeed());
+        }
+        if (op.getOperations() != null) {
+            out.writeShort(op.getOperations().size());
+            for (Operation subOp : op.getOperations()) {
+                writeOperation(out, subOp);
+            }
+        }
+    }
+
+    /**
+     * Reads an operation written by writeOperation.
+     * 
+     * @param in The input to read from
+     * @return The operation
+     * @throws IOException If the operation could not be read
+     */
+    static Operation readOperation(DataInput in) throws IOException {
+        Op kind = Op.values()[in.readUnsignedByte()];
+        int sessionId = in.readInt();
+        int fields = in.readUnsignedShort();
+        Integer pile1 = (fields & FieldPile1) != 0 ? Integer.valueOf(in.readByte()) : null;
+        Integer pile2 = (fields & FieldPile2) != 0 ? Integer.valueOf(in.readByte()) : null;
+        Card card = (fields & FieldCard) != 0 ? Card.fromIndex(in.readUnsignedByte()) : null;
+        String name = (fields & FieldName) != 0 ? in.readUTF() : null;
+        String ipAddr = (fields & FieldIpAddr) != 0 ? in.readUTF() : null;
+        int count = (fields & FieldCount) != 0 ? in.readInt() : 0;
+        ArrayList<Integer> targets = null;
+        if ((fields & FieldTargets) != 0) {
+            int n = in.readUnsignedByte();
+            targets = new ArrayList<Integer>(n);
+            for (int i = 0; i < n; i++) {
+                targets.add(Integer.valueOf(in.readByte()));
+            }
+        }
+        long seed = (fields & FieldSeed) != 0 ? in.readLong() : 0;
+        ArrayList<Operation> ops = null;
+        if ((fields & FieldOps) != 0) {
+            int n = in.readUnsignedShort();
+            ops = new ArrayList<Operation>(n);
+            for (int i = 0; i < n; i++) {
+                ops.add(readOperation(in));
+            }
+        }
+        Operation op = new Operation(kind, pile1, pile2, card, name, targets, count, ops);
+        op.setSessionId(sessionId);
+        op.setIpAddr(ipAddr);
+        op.setSeed(seed);
+        return op;
+    }
+
+    /**
+     * Everything needed to go on with a game from a point in time: the state, the users in the game and what can be
+     * undone.
+     */
+    public static class Keyframe implements Serializable {
+        private static final long serialVersionUID = 4417950388283342641L;
+        private final GameState   mState;
+        private final int[]       mSessionIds;
+        private final String[]    mSessionIps;
+        private final int         mNextSessionId;
+        private final UndoHistory mUndo;
+
+        /**
+         * Creates a keyframe.
+         * 
+         * @param state The state of the game
+         * @param sessions The sessions of the users in the game
+         * @param nextSessionId The id the next user to join will get
+         * @param undo The steps that can be undone and redone
+         */
+        Keyframe(GameState state, List<Session> sessions, int nextSessionId, UndoHistory undo) {
+            mState = state;
+            mSessionIds = new int[sessions.size()];
+            mSessionIps = new String[sessions.size()];
+            for (int i = 0; i < sessions.size(); i++) {
+                mSessionIds[i] = sessions.get(i).getId();
+                mSessionIps[i] = sessions.get(i).getIpAddr();
+            }
+            mNextSessionId = nextSessionId;
+            mUndo = undo;
+        }
+
+        /**
+         * @return The state of the game
+         */
+        GameState getState() {
+            return mState;
+        }
+
+        /**
+         * @return The session ids of the users in the game
+         */
+        int[] getSessionIds() {
+            return mSessionIds;
+        }
+
+        /**
+         * @return The ip addresses of the users in the game, in the same order as the session ids
+         */
+        String[] getSessionIps() {
+            return mSessionIps;
+        }
+
+        /**
+         * @return The id the next user to join will get
+         */
+        int getNextSessionId() {
+            return mNextSessionId;
+        }
+
+        /**
+         * @return The steps that can be undone and redone
+         */
+        UndoHistory getUndo() {
+            return mUndo;
+        }
+    }
+}
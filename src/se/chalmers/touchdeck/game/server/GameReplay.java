@@ -0,0 +1,197 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import se.chalmers.touchdeck.game.server.GameRecorder.Keyframe;
+
+/**
+ * Replays a game recorded by GameRecorder. The recording is indexed by its keyframes when it is opened, so seeking to
+ * any point in the game only replays the operations after the closest keyframe before it. The games are replayed on
+ * GameControllers that are not on the network.
+ * 
+ * @author group17
+ */
+public class GameReplay {
+    private final RandomAccessFile  mFile;
+    private final long              mStartedAt;
+    // The time and the offset in the file of every keyframe
+    private final ArrayList<long[]> mKeyframes  = new ArrayList<long[]>();
+    private int                     mDuration   = 0;
+    private int                     mOperations = 0;
+
+    /**
+     * Opens a recording and indexes its keyframes.
+     * 
+     * @param file The recorded game
+     * @throws IOException If the file could not be read or is not a recorded game
+     */
+    public GameReplay(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        if (mFile.readInt() != GameRecorder.Magic || mFile.readByte() != GameRecorder.FormatVersion) {
+            mFile.close();
+            throw new IOException("Not a recorded game: " + file);
+        }
+        mStartedAt = mFile.readLong();
+        while (mFile.getFilePointer() < mFile.length()) {
+            long offset = mFile.getFilePointer();
+            byte kind = mFile.readByte();
+            int time;
+            try {
+                time = mFile.readInt();
+                if (kind == GameRecorder.KindKeyframe) {
+                    mFile.skipBytes(mFile.readInt());
+                    mKeyframes.add(new long[] { time, offset });
+                } else {
+                    GameRecorder.readOperation(mFile);
+                    mOperations++;
+                }
+            } catch (IOException e) {
+                break; // The recording was cut off, replay what there is
+            }
+            mDuration = time;
+        }
+        if (mKeyframes.isEmpty()) {
+            mFile.close();
+            throw new IOException("No keyframe in recorded game: " + file);
+        }
+    }
+
+    /**
+     * @return The wall clock time the recording started, in milliseconds since 1970
+     */
+    public long getStartedAt() {
+        return mStartedAt;
+    }
+
+    /**
+     * @return The time of the last record, in milliseconds since the recording started
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return The number of operations recorded
+     */
+    public int getOperations() {
+        return mOperations;
+    }
+
+    /**
+     * @return The number of keyframes recorded
+     */
+    public int getKeyframes() {
+        return mKeyframes.size();
+    }
+
+    /**
+     * Rebuilds the game as it was at a point in time, starting from the closest keyframe before it.
+     * 
+     * @param millis The time, in milliseconds since the recording started
+     * @return A GameController, not on the network, holding the game after every operation performed up to the time
+     * @throws IOException If the recording could not be read
+     */
+    public synchronized GameController seek(long millis) throws IOException {
+        int i = mKeyframes.size() - 1;
+        while (i > 0 && mKeyframes.get(i)[0] > millis) {
+            i--;
+        }
+        return replay(mKeyframes.get(i)[1], millis);
+    }
+
+    /**
+     * Replays the whole game from the first keyframe, performing every recorded operation. Useful for measuring how
+     * fast a GameController handles real traffic.
+     * 
+     * @return A GameController, not on the network, holding the game at the end of the recording
+     * @throws IOException If the recording could not be read
+     */
+    public synchronized GameController replayAll() throws IOException {
+        return replay(mKeyframes.get(0)[1], Long.MAX_VALUE);
+    }
+
+    /**
+     * Closes the recording.
+     */
+    public synchronized void close() {
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            // Nothing left to read anyway
+        }
+    }
+
+    /**
+     * Loads a keyframe and performs the operations recorded after it.
+     * 
+     * @param offset The offset of the keyframe in the file
+     * @param millis The time to stop at
+     * @return The GameController holding the game
+     * @throws IOException If the recording could not be read
+     */
+    private GameController replay(long offset, long millis) throws IOException {
+        mFile.seek(offset);
+        mFile.readByte(); // The kind, a keyframe
+        mFile.readInt(); // The time
+        byte[] bytes = new byte[mFile.readInt()];
+        mFile.readFully(bytes);
+        Keyframe keyframe;
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            keyframe = (Keyframe) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown keyframe: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+        GameController gc = GameController.fromKeyframe(keyframe);
+
+        while (mFile.getFilePointer() < mFile.length()) {
+            byte kind = mFile.readByte();
+            int time;
+            Operation op = null;
+            try {
+                time = mFile.readInt();
+                if (kind == GameRecorder.KindKeyframe) {
+                    mFile.skipBytes(mFile.readInt());
+                } else {
+                    op = GameRecorder.readOperation(mFile);
+                }
+            } catch (IOException e) {
+                break; // The recording was cut off
+            }
+            if (time > millis) {
+                break;
+            }
+            if (op != null) {
+                gc.replayOperation(op);
+            }
+        }
+        return gc;
+    }
+}
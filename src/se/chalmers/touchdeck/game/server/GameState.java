@@ -23,80 +23,130 @@ package se.chalmers.touchdeck.game.server;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Represents the state of the game. Holds the position and content of all piles and therefore all cards. Also holds a
- * set of all the names of the piles.
+ * Represents the state of the game. Holds the position and content of all piles and therefore all cards. A state is
+ * never changed once created, every version of the game is a new state that shares the unchanged piles with the
+ * version before it. The piles of a state must not be changed either, so a state can be read, serialized and sent
+ * without holding any lock while the game moves on.
  * 
  * @author or3x
  */
 public class GameState implements Serializable {
-    private static final long serialVersionUID = -1348920124510465049L;
-    private ArrayList<Pile>   mPiles;
-    private HashSet<String>   mPileNames       = new HashSet<String>();
-    private int               mDefaultPileNo   = 1;
-    private boolean           mHostStillLeft   = true;
-    private boolean           mIsRestarted     = false;
+    private static final long     serialVersionUID = -1348920124510465049L;
+    private final ArrayList<Pile> mPiles;
+    private final int             mDefaultPileNo;
+    private final boolean         mHostStillLeft;
+    private final boolean         mIsRestarted;
+    private final int             mVersion;
 
     /**
-     * Holds the state for the game.
+     * Holds the first state for the game.
      * 
      * @param piles A list of all the piles on the table
-     * @param pileNames A set of all the pile names
      */
-    public GameState(ArrayList<Pile> piles, HashSet<String> pileNames) {
-        mPiles = piles;
-        mPileNames = pileNames;
+    public GameState(List<Pile> piles) {
+        this(piles, 0, 1, true, false);
     }
 
     /**
-     * @return the piles
+     * Holds a version of the state for the game.
+     * 
+     * @param piles A list of all the piles on the table, the list is copied
+     * @param version The version of the state
+     * @param defaultPileNo The number of the default pile name
+     * @param hostStillLeft Whether the host is still in the game
+     * @param isRestarted Whether the game was restarted in this version
      */
-    public ArrayList<Pile> getPiles() {
-        return mPiles;
+    public GameState(List<Pile> piles, int version, int defaultPileNo, boolean hostStillLeft, boolean isRestarted) {
+        mPiles = new ArrayList<Pile>(piles);
+        mVersion = version;
+        mDefaultPileNo = defaultPileNo;
+        mHostStillLeft = hostStillLeft;
+        mIsRestarted = isRestarted;
     }
 
     /**
-     * @param piles the piles to set
+     * Creates the state that results from applying a delta to this state. This state is left untouched, so that the
+     * gui can keep reading it while the new one is built.
+     * 
+     * @param delta The delta to apply, its from-version should match the version of this state
+     * @return The new state
      */
-    public void setPiles(ArrayList<Pile> piles) {
-        mPiles = piles;
+    public GameState applyDelta(StateDelta delta) {
+        ArrayList<Pile> piles = new ArrayList<Pile>(mPiles);
+        for (Map.Entry<Integer, Pile> entry : delta.getPiles().entrySet()) {
+            piles.set(entry.getKey(), entry.getValue());
+        }
+        return new GameState(piles, delta.getToVersion(), delta.getDefaultPileNo(), delta.getHostStillLeft(),
+                delta.getIsRestarted());
     }
 
     /**
-     * @return the pileNames
+     * Creates the state as a player is sent it. The piles protected by other players are hidden and only tell how
+     * many cards they have, and the other piles are summaries with only the top card, except the one the player is
+     * looking at. Face-down cards are sent as they are, see Pile.isHiddenFrom.
+     * 
+     * @param viewer The session id of the player
+     * @param subscribed The position of the pile the player is looking at, or -1 if it is not looking at any
+     * @return The state as the player is sent it, or this state if nothing is left out
      */
-    public HashSet<String> getPileNames() {
-        return mPileNames;
+    public GameState projectFor(int viewer, int subscribed) {
+        ArrayList<Pile> piles = null;
+        for (int i = 0; i < mPiles.size(); i++) {
+            Pile p = mPiles.get(i);
+            Pile viewed = p == null ? null : p.viewedBy(viewer, i == subscribed);
+            if (viewed != p) {
+                if (piles == null) {
+                    piles = new ArrayList<Pile>(mPiles);
+                }
+                piles.set(i, viewed);
+            }
+        }
+        if (piles == null) {
+            return this;
+        }
+        return new GameState(piles, mVersion, mDefaultPileNo, mHostStillLeft, mIsRestarted);
     }
 
     /**
-     * @return The default pile name
+     * @return The piles by position, a null value means the position is empty
      */
-    public String getDefaultPileName() {
-        return "Pile " + mDefaultPileNo;
+    public List<Pile> getPiles() {
+        return Collections.unmodifiableList(mPiles);
     }
 
     /**
-     * @param pileNo The number to set as the default pile number
+     * Checks if a pile on the table has a name. The piles are searched, which is fine for the few piles on a table;
+     * the host keeps an index of the names in a PileNameRegistry.
+     * 
+     * @param name The name
+     * @return Whether a pile has the name
      */
-    public void setDefaultPileNo(int pileNo) {
-        mDefaultPileNo = pileNo;
+    public boolean hasPileNamed(String name) {
+        for (Pile p : mPiles) {
+            if (p != null && p.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * @return The number of the default pile
+     * @return The default pile name
      */
-    public int getDefaultPileNo() {
-        return mDefaultPileNo;
+    public String getDefaultPileName() {
+        return "Pile " + mDefaultPileNo;
     }
 
     /**
-     * @param b Indicates whether the host is still in the game
+     * @return The number of the default pile
      */
-    public void setHostStillLeft(boolean b) {
-        mHostStillLeft = b;
+    public int getDefaultPileNo() {
+        return mDefaultPileNo;
     }
 
     /**
@@ -114,9 +164,9 @@ public class GameState implements Serializable {
     }
 
     /**
-     * @param isRestarted Whether or not the game has been restarted
+     * @return The version of the state, increased by one for every update sent out
      */
-    public void setIsRestarted(boolean isRestarted) {
-        mIsRestarted = isRestarted;
+    public int getVersion() {
+        return mVersion;
     }
 }
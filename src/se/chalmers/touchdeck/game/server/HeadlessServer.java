@@ -0,0 +1,108 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.chalmers.touchdeck.misc.log.ConsoleLogSink;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.network.ConnectionExecutor;
+import se.chalmers.touchdeck.network.GameListener;
+import se.chalmers.touchdeck.network.HostAnnouncer;
+
+/**
+ * Runs tables on a plain JVM, e.g. on a Linux server, without the app. The tables are dedicated: the server has no
+ * player of its own, so they stay open until the server is stopped. All the tables are announced on the local network
+ * by one HostAnnouncer, since they share the port the probes are sent to.
+ * 
+ * @author group17
+ */
+public class HeadlessServer {
+
+    /**
+     * Not to be instantiated.
+     */
+    private HeadlessServer() {
+    }
+
+    /**
+     * Starts the tables and keeps running until the process is stopped.
+     * 
+     * @param args The command line, see ServerConfig.Usage
+     */
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.Usage);
+            System.exit(2);
+            return;
+        }
+        Logger.setSink(new ConsoleLogSink());
+        Logger.setLevel(config.getLogLevel());
+        ConnectionExecutor.set(createExecutor(config));
+        GameListener.setRateLimit(config.getOpRate(), config.getOpBurst());
+
+        final List<GameController> tables = new ArrayList<GameController>();
+        final HostAnnouncer announcer = new HostAnnouncer();
+        Logger.i("Server", "Hosting ", config.getName());
+        for (int i = 0; i < config.getTables(); i++) {
+            String name = config.getTables() == 1 ? config.getName() : config.getName() + " " + (i + 1);
+            GameController table = new GameController(name, config.getPort() + i, false);
+            tables.add(table);
+            announcer.addTable(table, name, config.getPort() + i);
+            Logger.i("Server", "Listening on port ", config.getPort() + i);
+        }
+        new Thread(announcer).start();
+        // Tell the players the tables are gone when the server is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread("Shutdown") {
+            @Override
+            public void run() {
+                announcer.end();
+                for (GameController table : tables) {
+                    table.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the executor the connections are handled on.
+     * 
+     * @param config The settings
+     * @return The executor
+     */
+    private static ConnectionExecutor createExecutor(ServerConfig config) {
+        if (config.getThreads().equals("virtual")) {
+            ConnectionExecutor virtual = ConnectionExecutor.virtualThreads();
+            if (virtual != null) {
+                return virtual;
+            }
+            Logger.e("Server", "This JVM has no virtual threads, using platform threads");
+        } else if (!config.getThreads().equals("platform")) {
+            return ConnectionExecutor.boundedPool(Integer.parseInt(config.getThreads()));
+        }
+        return ConnectionExecutor.platformThreads(config.getStackSize());
+    }
+}
@@ -22,6 +22,7 @@
 package se.chalmers.touchdeck.game.server;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 
 /**
  * Class representing the operations that can be made on cards and piles.
@@ -36,28 +37,36 @@ public class Operation implements Serializable {
      * The operations that can be performed.
      */
     public enum Op {
-        move, flip, create, connect, shuffle, delete, rename, faceUp, faceDown, moveAll, protect, unprotect, disconnect, pileMove, restart
+        move, flip, create, connect, shuffle, delete, rename, faceUp, faceDown, moveAll, protect, unprotect, disconnect, pileMove, restart, resume, sync, joinMulticast, deal, batch, gather, undo, redo, subscribe, unsubscribe
     }
 
-    private Op      mOp;
-    private Integer mPile1;
-    private Integer mPile2;
-    private Card    mCard;
-    private String  mName;
-    private String  mIpAddr;
+    private Op                   mOp;
+    private Integer              mPile1;
+    private Integer              mPile2;
+    private Card                 mCard;
+    private String               mName;
+    private String               mIpAddr;
+    private long                 mSessionToken;
+    private int                  mVersion;
+    private ArrayList<Integer>   mTargets;
+    private int                  mCount;
+    private ArrayList<Operation> mOperations;
+    private int                  mSessionId;
+    private long                 mSeed;
+    private int                  mSeq;
 
-    // connect / disconnect / restart
+    // connect / disconnect / restart / resume / sync / joinMulticast / undo / redo
     public Operation(Op op) {
         mOp = op;
     }
 
-    // shuffle / delete / faceUp / faceDown
+    // shuffle / delete / faceUp / faceDown / gather / protect / unprotect / subscribe / unsubscribe
     public Operation(Op op, Integer pile1) {
         mOp = op;
         mPile1 = pile1;
     }
 
-    // create / rename / protect / unprotect
+    // create / rename
     public Operation(Op op, Integer pile1, String name) {
         mOp = op;
         mPile1 = pile1;
@@ -79,6 +88,33 @@ public class Operation implements Serializable {
         mCard = card;
     }
 
+    // deal
+    public Operation(Op op, Integer pile1, ArrayList<Integer> targets, int count) {
+        mOp = op;
+        mPile1 = pile1;
+        mTargets = targets;
+        mCount = count;
+    }
+
+    // batch
+    public Operation(Op op, ArrayList<Operation> operations) {
+        mOp = op;
+        mOperations = operations;
+    }
+
+    // replay
+    Operation(Op op, Integer pile1, Integer pile2, Card card, String name, ArrayList<Integer> targets, int count,
+            ArrayList<Operation> operations) {
+        mOp = op;
+        mPile1 = pile1;
+        mPile2 = pile2;
+        mCard = card;
+        mName = name;
+        mTargets = targets;
+        mCount = count;
+        mOperations = operations;
+    }
+
     /**
      * @return the pile1
      */
@@ -155,4 +191,95 @@ public class Operation implements Serializable {
     public void setIpAddr(String ipAddr) {
         mIpAddr = ipAddr;
     }
+
+    /**
+     * @return the session token of the client, used when resuming
+     */
+    public long getSessionToken() {
+        return mSessionToken;
+    }
+
+    /**
+     * @param sessionToken the session token to set
+     */
+    public void setSessionToken(long sessionToken) {
+        mSessionToken = sessionToken;
+    }
+
+    /**
+     * @return the last version of the state the client has seen, used when resuming or syncing
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @param version the version to set
+     */
+    public void setVersion(int version) {
+        mVersion = version;
+    }
+
+    /**
+     * @return the positions of the piles to deal to, in the order they are dealt to
+     */
+    public ArrayList<Integer> getTargets() {
+        return mTargets;
+    }
+
+    /**
+     * @return the number of cards to deal in total
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the operations of a batch, performed in order and all or none
+     */
+    public ArrayList<Operation> getOperations() {
+        return mOperations;
+    }
+
+    /**
+     * @return the session id of the client performing the operation, set by the server
+     */
+    public int getSessionId() {
+        return mSessionId;
+    }
+
+    /**
+     * @param sessionId the session id to set
+     */
+    public void setSessionId(int sessionId) {
+        mSessionId = sessionId;
+    }
+
+    /**
+     * @return the seed a shuffle was made with, set by the server so that the shuffle can be replayed
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * @param seed the seed to set
+     */
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * @return the number the client gave the operation, repeated in the ack, or 0 if the client wants no ack
+     */
+    public int getSeq() {
+        return mSeq;
+    }
+
+    /**
+     * @param seq the number to set
+     */
+    public void setSeq(int seq) {
+        mSeq = seq;
+    }
 }
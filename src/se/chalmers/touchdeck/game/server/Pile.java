@@ -21,23 +21,34 @@
 
 package se.chalmers.touchdeck.game.server;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.Random;
 
 import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.enums.Face;
 
 /**
- * Class modeling a pile.
+ * Class modeling a pile. The pile keeps track of which way its cards are facing, rather than the cards themselves: all
+ * cards face the same way as the pile, except the ones marked as flipped. Cards are marked by their index in the deck,
+ * so a pile can not hold two copies of the same card.
  * 
  * @author group17
  */
 public class Pile implements Serializable {
 
-    private static final long      serialVersionUID = -3056217673776714467L;
-    private final LinkedList<Card> mCards           = new LinkedList<Card>();
-    private String                 mName;
-    private String                 mOwner           = "noOwner";
+    private static final long          serialVersionUID = 4660307651370316542L;
+    private transient LinkedList<Card> mCards           = new LinkedList<Card>();
+    private transient boolean          mFaceUp          = false;
+    private transient BitSet           mFlipped         = new BitSet(Card.NumOfCards);
+    private String                     mName;
+    private int                        mOwner           = Constant.PileHasNoOwner;
+    private int                        mHiddenCards     = 0;
 
     /**
      * Constructor.
@@ -56,45 +67,133 @@ public class Pile implements Serializable {
     }
 
     /**
-     * Adds a card to the pile.
+     * Copy constructor.
+     * 
+     * @param other The pile to copy
+     */
+    public Pile(Pile other) {
+        mName = other.mName;
+        mOwner = other.mOwner;
+        mHiddenCards = other.mHiddenCards;
+        mCards.addAll(other.mCards);
+        mFaceUp = other.mFaceUp;
+        mFlipped.or(other.mFlipped);
+    }
+
+    /**
+     * Adds a card to the pile, facing the way the card does.
      * 
      * @param card The card to add
      */
     public void addCard(Card card) {
+        boolean faceUp = card.getFaceState() == Face.up;
+        if (mCards.isEmpty()) {
+            mFaceUp = faceUp;
+            mFlipped.clear();
+        }
+        mFlipped.set(card.getIndex(), faceUp != mFaceUp);
         mCards.addFirst(card);
     }
 
+    /**
+     * Puts all the cards of another pile on top of this one, keeping their order and faces, and empties the other
+     * pile. Costs one pass over the cards moved, regardless of the size of this pile.
+     * 
+     * @param other The pile to take the cards from
+     */
+    public void addPile(Pile other) {
+        if (other == this || other.mCards.isEmpty()) {
+            return;
+        }
+        if (mCards.isEmpty()) {
+            mFaceUp = other.mFaceUp;
+            mFlipped.clear();
+        }
+        if (other.mFaceUp == mFaceUp) {
+            mFlipped.or(other.mFlipped);
+        } else {
+            // The cards of the other pile that were not flipped there are flipped here
+            for (Card card : other.mCards) {
+                int index = card.getIndex();
+                mFlipped.set(index, !other.mFlipped.get(index));
+            }
+        }
+        mCards.addAll(0, other.mCards);
+        other.mCards.clear();
+        other.mFlipped.clear();
+    }
+
     /**
      * Takes one card from the pile.
      * 
      * @param pos The position of the card
-     * @return The card
+     * @return The card, facing the way it did in the pile
      */
     public Card takeCard(int pos) {
         try {
             Card card = mCards.remove(pos);
-            return card;
+            Card taken = withFace(card);
+            mFlipped.clear(card.getIndex());
+            return taken;
         } catch (IndexOutOfBoundsException e) {
             return null;
         }
     }
 
+    /**
+     * Gives the position of a card in the pile.
+     * 
+     * @param card The card to look for
+     * @return The position, or -1 if the card is not in the pile
+     */
+    public int indexOf(Card card) {
+        return mCards.indexOf(card);
+    }
+
+    /**
+     * Flips a card in the pile.
+     * 
+     * @param card The card to flip
+     * @return Whether the card was in the pile
+     */
+    public boolean flipCard(Card card) {
+        if (!mCards.contains(card)) {
+            return false;
+        }
+        mFlipped.flip(card.getIndex());
+        return true;
+    }
+
+    /**
+     * Faces all the cards of the pile the same way, without touching the cards.
+     * 
+     * @param face The way to face the cards
+     */
+    public void setFace(Face face) {
+        mFaceUp = face == Face.up;
+        mFlipped.clear();
+    }
+
     /**
      * Returns the number of cards in the pile.
      * 
      * @return The number of cars in the pile
      */
     public int getSize() {
-        return mCards.size();
+        return mCards.size() + mHiddenCards;
     }
 
     /**
      * Returns the cards in the pile.
      * 
-     * @return The cards in the piles
+     * @return Copies of the cards in the pile, facing the way they do in the pile
      */
     public LinkedList<Card> getCards() {
-        return mCards;
+        LinkedList<Card> cards = new LinkedList<Card>();
+        for (Card card : mCards) {
+            cards.add(withFace(card));
+        }
+        return cards;
     }
 
     /**
@@ -119,12 +218,12 @@ public class Pile implements Serializable {
      * Returns the card at a certain index.
      * 
      * @param cardPos the position of the card
-     * @return The requested card, or null if pos was out of range
+     * @return A copy of the requested card facing the way it does in the pile, or null if pos was out of range
      */
     public Card getCard(int cardPos) {
         try {
             Card card = mCards.get(cardPos);
-            return card;
+            return withFace(card);
         } catch (IndexOutOfBoundsException e) {
             return null;
         }
@@ -135,22 +234,147 @@ public class Pile implements Serializable {
      * Randomly rearranges the order of cards in the pile, effectively shuffling it.
      */
     public void shuffle() {
+        shuffle(new Random());
+    }
+
+    /**
+     * Rearranges the order of cards in the pile, the same way every time for the same source of randomness.
+     * 
+     * @param random The source of randomness
+     */
+    public void shuffle(Random random) {
         for (int i = 0; i < Constant.RepeatShuffle; i++) {
-            Collections.shuffle(mCards);
+            Collections.shuffle(mCards, random);
         }
     }
 
     /**
-     * @return the Owner
+     * @return the session id of the Owner, or Constant.PileHasNoOwner
      */
-    public String getOwner() {
+    public int getOwner() {
         return mOwner;
     }
 
     /**
-     * @param owner the Owner to set
+     * @param owner the session id of the Owner to set
      */
-    public void setOwner(String owner) {
+    public void setOwner(int owner) {
         mOwner = owner;
     }
+
+    /**
+     * Checks if the cards of the pile are kept from a player, which they are if another player has protected it. The
+     * face-down cards of other piles are not kept from anyone, since the players refer to cards by rank and suit when
+     * moving or flipping them.
+     * 
+     * @param viewer The session id of the player
+     * @return Whether the player may only see how many cards the pile has
+     */
+    public boolean isHiddenFrom(int viewer) {
+        return mOwner != Constant.PileHasNoOwner && mOwner != viewer && !mCards.isEmpty();
+    }
+
+    /**
+     * Creates the pile as seen by the players it is hidden from: it has the same name, owner and size, but no cards.
+     * 
+     * @return The hidden pile
+     */
+    public Pile hidden() {
+        Pile pile = new Pile(mName);
+        pile.mOwner = mOwner;
+        pile.mHiddenCards = getSize();
+        return pile;
+    }
+
+    /**
+     * Creates the summary of the pile shown on the table: it has the same name, owner and size, but only the top card.
+     * 
+     * @return The summary, or this pile if it has no more than the top card
+     */
+    public Pile summary() {
+        if (mCards.size() <= 1) {
+            return this;
+        }
+        Pile pile = new Pile(mName);
+        pile.mOwner = mOwner;
+        Card top = mCards.getFirst();
+        pile.mCards.add(top);
+        pile.mFaceUp = mFaceUp;
+        pile.mFlipped.set(top.getIndex(), mFlipped.get(top.getIndex()));
+        pile.mHiddenCards = getSize() - 1;
+        return pile;
+    }
+
+    /**
+     * Gives the pile as a player is sent it: hidden if another player has protected it, in full if the player is
+     * looking at it and otherwise only its summary.
+     * 
+     * @param viewer The session id of the player
+     * @param subscribed Whether the player is looking at the pile
+     * @return The pile as the player is sent it
+     */
+    public Pile viewedBy(int viewer, boolean subscribed) {
+        if (isHiddenFrom(viewer)) {
+            return hidden();
+        }
+        return subscribed ? this : summary();
+    }
+
+    /**
+     * @return Whether all the cards of the pile are known, and not only the top card or the size
+     */
+    public boolean isComplete() {
+        return mHiddenCards == 0;
+    }
+
+    /**
+     * Gives a copy of a card in the pile facing the way it does in the pile.
+     * 
+     * @param card The card
+     * @return The copy
+     */
+    private Card withFace(Card card) {
+        return new Card(card.getSuit(), card.getRank(), mFaceUp != mFlipped.get(card.getIndex()));
+    }
+
+    /**
+     * Writes the cards as their indexes in the deck, followed by the way the pile faces and the flipped cards.
+     * 
+     * @param out The stream to write to
+     * @throws IOException If writing fails
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(mCards.size());
+        for (Card card : mCards) {
+            out.writeByte(card.getIndex());
+        }
+        out.writeBoolean(mFaceUp);
+        out.writeInt(mFlipped.cardinality());
+        for (int i = mFlipped.nextSetBit(0); i >= 0; i = mFlipped.nextSetBit(i + 1)) {
+            out.writeByte(i);
+        }
+    }
+
+    /**
+     * Reads a pile written by writeObject.
+     * 
+     * @param in The stream to read from
+     * @throws IOException If reading fails
+     * @throws ClassNotFoundException If the class of the name or owner is not found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        mCards = new LinkedList<Card>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            mCards.add(Card.fromIndex(in.readUnsignedByte()));
+        }
+        mFaceUp = in.readBoolean();
+        mFlipped = new BitSet(Card.NumOfCards);
+        int flipped = in.readInt();
+        for (int i = 0; i < flipped; i++) {
+            mFlipped.set(in.readUnsignedByte());
+        }
+    }
 }
@@ -0,0 +1,173 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * Keeps track of the names of the piles on the table and where the piles are. Gives every pile a unique name, handing
+ * out the lowest free default name ("Pile N") when the name asked for is taken.
+ * 
+ * @author group17
+ */
+public class PileNameRegistry {
+    private static final String            DefaultPrefix = "Pile ";
+
+    private final HashMap<String, Integer> mPositions    = new HashMap<String, Integer>();
+    // The default numbers in use, the clear bits are the free list. There are never more piles than positions, so
+    // the lowest free number is at most NumOfPiles + 1 and higher numbers need not be tracked
+    private final BitSet                   mUsedDefaults = new BitSet();
+
+    /**
+     * Gives a pile its name. The name entered is used if it is free, otherwise the pile gets the lowest free default
+     * name.
+     * 
+     * @param nameEntered The name entered for the pile
+     * @param pilePos The position of the pile
+     * @return The name the pile should have
+     */
+    public String claim(String nameEntered, int pilePos) {
+        String name = nameEntered;
+        if (name == null || mPositions.containsKey(name)) {
+            name = getDefaultPileName();
+        }
+        add(name, pilePos);
+        return name;
+    }
+
+    /**
+     * Registers a name that is known to be free.
+     * 
+     * @param name The name
+     * @param pilePos The position of the pile with the name
+     */
+    public void add(String name, int pilePos) {
+        mPositions.put(name, pilePos);
+        int defaultNo = defaultNumberOf(name);
+        if (defaultNo > 0) {
+            mUsedDefaults.set(defaultNo);
+        }
+    }
+
+    /**
+     * Frees a name, for example when its pile is deleted or renamed.
+     * 
+     * @param name The name
+     */
+    public void release(String name) {
+        if (mPositions.remove(name) != null) {
+            int defaultNo = defaultNumberOf(name);
+            if (defaultNo > 0) {
+                mUsedDefaults.clear(defaultNo);
+            }
+        }
+    }
+
+    /**
+     * Updates the position of a pile that has been moved.
+     * 
+     * @param name The name of the pile
+     * @param pilePos The new position of the pile
+     */
+    public void move(String name, int pilePos) {
+        if (mPositions.containsKey(name)) {
+            mPositions.put(name, pilePos);
+        }
+    }
+
+    /**
+     * @param name A name
+     * @return Whether a pile has the name
+     */
+    public boolean contains(String name) {
+        return mPositions.containsKey(name);
+    }
+
+    /**
+     * @param name The name of a pile
+     * @return The position of the pile, or null if no pile has the name
+     */
+    public Integer positionOf(String name) {
+        return mPositions.get(name);
+    }
+
+    /**
+     * @return The number of the lowest free default name
+     */
+    public int getDefaultPileNo() {
+        return mUsedDefaults.nextClearBit(1);
+    }
+
+    /**
+     * @return The lowest free default name
+     */
+    public String getDefaultPileName() {
+        return DefaultPrefix + getDefaultPileNo();
+    }
+
+    /**
+     * Forgets all names.
+     */
+    public void clear() {
+        mPositions.clear();
+        mUsedDefaults.clear();
+    }
+
+    /**
+     * Forgets all names and registers the names of the piles on a table instead.
+     * 
+     * @param table The piles by position, null for an empty position
+     */
+    public void rebuild(List<Pile> table) {
+        clear();
+        for (int i = 0; i < table.size(); i++) {
+            if (table.get(i) != null) {
+                add(table.get(i).getName(), i);
+            }
+        }
+    }
+
+    /**
+     * @param name A name
+     * @return The number of the name if it is a tracked default name ("Pile N", 0 < N <= NumOfPiles + 1 without
+     *         leading zeros), otherwise 0
+     */
+    private static int defaultNumberOf(String name) {
+        int len = name.length();
+        int start = DefaultPrefix.length();
+        if (len <= start || len > start + 3 || !name.startsWith(DefaultPrefix) || name.charAt(start) == '0') {
+            return 0;
+        }
+        int no = 0;
+        for (int i = start; i < len; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            no = no * 10 + (c - '0');
+        }
+        return no <= Constant.NumOfPiles + 1 ? no : 0;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.io.Serializable;
+
+/**
+ * Measures the round-trip time between a client and the host, in both directions with three messages: the client
+ * sends a request with its time, the host answers with the client's time and its own, and the client echoes the
+ * host's time back. Each side compares the time it gets back with its clock.
+ * 
+ * @author group17
+ */
+public class Ping implements Serializable {
+
+    private static final long serialVersionUID = -6155030716218840712L;
+
+    /**
+     * The messages of a measurement.
+     */
+    public enum Kind {
+        request, answer, echo
+    }
+
+    private final Kind mKind;
+    private final long mClientTime;
+    private final long mHostTime;
+    private final long mSessionToken;
+
+    /**
+     * Creates a new ping.
+     * 
+     * @param kind Which message of the measurement it is
+     * @param clientTime The time of the client when sending the request, in nanoseconds
+     * @param hostTime The time of the host when sending the answer, in nanoseconds
+     * @param sessionToken The session token of the client sending it, 0 when sent by the host
+     */
+    public Ping(Kind kind, long clientTime, long hostTime, long sessionToken) {
+        mKind = kind;
+        mClientTime = clientTime;
+        mHostTime = hostTime;
+        mSessionToken = sessionToken;
+    }
+
+    /**
+     * @return Which message of the measurement it is
+     */
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * @return The time of the client when sending the request, in nanoseconds
+     */
+    public long getClientTime() {
+        return mClientTime;
+    }
+
+    /**
+     * @return The time of the host when sending the answer, in nanoseconds
+     */
+    public long getHostTime() {
+        return mHostTime;
+    }
+
+    /**
+     * @return The session token of the client sending it, 0 when sent by the host
+     */
+    public long getSessionToken() {
+        return mSessionToken;
+    }
+}
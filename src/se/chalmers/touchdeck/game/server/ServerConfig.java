@@ -0,0 +1,187 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * The settings of a dedicated server, read from the command line and optionally a properties file. The options are
+ * the same as the keys of the file, e.g. "--port 4242" or "port=4242"; options on the command line win over the file.
+ * 
+ * @author group17
+ */
+public class ServerConfig {
+    public static final String Usage = "Usage: HeadlessServer [--config <file>] [--port <first port>]"
+                                             + " [--tables <count>] [--name <table name>]"
+                                             + " [--threads platform|virtual|<pool size>]"
+                                             + " [--stackKb <kB per connection>] [--logLevel <2-6>]"
+                                             + " [--opRate <operations a second>] [--opBurst <operations>]";
+
+    private final int          mPort;
+    private final int          mTables;
+    private final String       mName;
+    private final String       mThreads;
+    private final long         mStackSize;
+    private final int          mLogLevel;
+    private final int          mOpRate;
+    private final int          mOpBurst;
+
+    /**
+     * Reads the settings.
+     * 
+     * @param args The command line
+     * @return The settings
+     * @throws IllegalArgumentException If the command line or the file can not be read, or a setting is out of range
+     */
+    public static ServerConfig parse(String[] args) {
+        Properties options = new Properties();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected an option and its value at " + args[i]);
+            }
+            options.setProperty(args[i].substring(2), args[i + 1]);
+        }
+        Properties settings = new Properties();
+        String file = options.getProperty("config");
+        if (file != null) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    settings.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read " + file + ": " + e.getMessage());
+            }
+        }
+        settings.putAll(options);
+        return new ServerConfig(settings);
+    }
+
+    /**
+     * Creates the settings from their values, using the defaults for the missing ones.
+     * 
+     * @param settings The values by name
+     */
+    private ServerConfig(Properties settings) {
+        mPort = number(settings, "port", Constant.GameControllerPort, 1, 65535);
+        mTables = number(settings, "tables", 1, 1, 65535 - mPort + 1);
+        mName = settings.getProperty("name", Constant.DefaultTableName);
+        mThreads = settings.getProperty("threads", "platform").trim();
+        if (!mThreads.equals("platform") && !mThreads.equals("virtual")) {
+            number(settings, "threads", 0, 1, Integer.MAX_VALUE);
+        }
+        mStackSize = number(settings, "stackKb", 0, 0, Integer.MAX_VALUE / 1024) * 1024L;
+        mLogLevel = number(settings, "logLevel", Constant.LogLevel, 2, 6);
+        mOpRate = number(settings, "opRate", Constant.OpRate, 1, Integer.MAX_VALUE);
+        mOpBurst = number(settings, "opBurst", Constant.OpBurst, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a number setting.
+     * 
+     * @param settings The settings
+     * @param name The name of the setting
+     * @param defaultValue The value if the setting is missing
+     * @param min The smallest value allowed
+     * @param max The largest value allowed
+     * @return The value
+     */
+    private static int number(Properties settings, String name, int defaultValue, int min, int max) {
+        String value = settings.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int number;
+        try {
+            number = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+        return number;
+    }
+
+    /**
+     * @return The port of the first table, the others listen to the ports after it
+     */
+    public int getPort() {
+        return mPort;
+    }
+
+    /**
+     * @return The number of tables
+     */
+    public int getTables() {
+        return mTables;
+    }
+
+    /**
+     * @return The name of the tables, numbered if there are more than one
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return How the connections are given threads: "platform" for a platform thread each, "virtual" for a
+     *         virtual thread each, or the size of a pool they share
+     */
+    public String getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * @return The stack size of the threads handling the connections in bytes, or 0 for the default
+     */
+    public long getStackSize() {
+        return mStackSize;
+    }
+
+    /**
+     * @return The lowest level logged
+     */
+    public int getLogLevel() {
+        return mLogLevel;
+    }
+
+    /**
+     * @return The number of operations each client may perform a second over time
+     */
+    public int getOpRate() {
+        return mOpRate;
+    }
+
+    /**
+     * @return The number of operations each client may perform at once
+     */
+    public int getOpBurst() {
+        return mOpBurst;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.net.Socket;
+
+import se.chalmers.touchdeck.misc.metrics.RoundTripTime;
+import se.chalmers.touchdeck.network.GameToGuiConnection;
+import se.chalmers.touchdeck.network.LocalConnection;
+
+/**
+ * The server side of a connected client. Outlives the connections of the client, so that a client that has lost its
+ * connection can come back to the same session.
+ * 
+ * @author group17
+ */
+public class Session {
+    private final long          mToken;
+    private final int           mId;
+    private String              mIpAddr;
+    private GameToGuiConnection mConnection;
+    private LocalConnection     mLocal;
+    private Socket              mSocket;
+    private int                 mResumeVersion  = -1;
+    private boolean             mMulticast      = false;
+    private int                 mSubscribedPile = -1;
+    private RoundTripTime       mRoundTrip;
+
+    /**
+     * Creates a new session.
+     * 
+     * @param token The token identifying the session
+     * @param id The small number the session is known by in the game, e.g. as the owner of piles
+     * @param ipAddr The ip address of the client
+     */
+    public Session(long token, int id, String ipAddr) {
+        mToken = token;
+        mId = id;
+        mIpAddr = ipAddr;
+    }
+
+    /**
+     * @return The token identifying the session
+     */
+    public long getToken() {
+        return mToken;
+    }
+
+    /**
+     * @return The id of the session
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * @return The ip address of the client
+     */
+    public String getIpAddr() {
+        return mIpAddr;
+    }
+
+    /**
+     * @param ipAddr The new ip address of the client
+     */
+    public void setIpAddr(String ipAddr) {
+        mIpAddr = ipAddr;
+    }
+
+    /**
+     * @return The connection to the client
+     */
+    public GameToGuiConnection getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * @param connection The connection to the client
+     */
+    public void setConnection(GameToGuiConnection connection) {
+        mConnection = connection;
+    }
+
+    /**
+     * @return The socket to send updates to the client on, or null if not connected
+     */
+    public Socket getSocket() {
+        return mSocket;
+    }
+
+    /**
+     * @param socket The socket to send updates to the client on
+     */
+    public void setSocket(Socket socket) {
+        mSocket = socket;
+    }
+
+    /**
+     * @return The connection to the gui of the host running in the same process, or null if the client is elsewhere
+     */
+    public LocalConnection getLocal() {
+        return mLocal;
+    }
+
+    /**
+     * @param local The connection to the gui of the host running in the same process
+     */
+    public void setLocal(LocalConnection local) {
+        mLocal = local;
+    }
+
+    /**
+     * @return The last version the client saw before reconnecting, or -1 if it needs the whole state
+     */
+    public int getResumeVersion() {
+        return mResumeVersion;
+    }
+
+    /**
+     * @param version The last version the client saw before reconnecting, or -1 if it needs the whole state
+     */
+    public void setResumeVersion(int version) {
+        mResumeVersion = version;
+    }
+
+    /**
+     * @return Whether the client listens to the updates sent to the multicast group
+     */
+    public boolean isMulticast() {
+        return mMulticast;
+    }
+
+    /**
+     * @param multicast Whether the client listens to the updates sent to the multicast group
+     */
+    public void setMulticast(boolean multicast) {
+        mMulticast = multicast;
+    }
+
+    /**
+     * @return The position of the pile the client is looking at and is sent in full, or -1 if it is not looking at
+     *         any
+     */
+    public int getSubscribedPile() {
+        return mSubscribedPile;
+    }
+
+    /**
+     * @param position The position of the pile the client is looking at and is sent in full, or -1 if it is not
+     *            looking at any
+     */
+    public void setSubscribedPile(int position) {
+        mSubscribedPile = position;
+    }
+
+    /**
+     * @return The round-trip time to the client, or null if it has not been measured
+     */
+    public RoundTripTime getRoundTrip() {
+        return mRoundTrip;
+    }
+
+    /**
+     * @param roundTrip The round-trip time to the client
+     */
+    public void setRoundTrip(RoundTripTime roundTrip) {
+        mRoundTrip = roundTrip;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.io.Serializable;
+
+/**
+ * The first message sent to a client on a new connection. Holds the token the client needs to resume its session
+ * after losing its connection, the id marking the piles it owns, the id of the table marking its multicast updates,
+ * and either the whole state or, when resuming, what the client has missed.
+ * 
+ * @author group17
+ */
+public class SessionInfo implements Serializable {
+    private static final long serialVersionUID = -4726805185530829911L;
+    private final long        mToken;
+    private final int         mSessionId;
+    private final long        mTableId;
+    private final GameState   mState;
+    private final StateDelta  mDelta;
+
+    /**
+     * Creates a message with the whole state.
+     * 
+     * @param token The session token of the client
+     * @param sessionId The session id of the client
+     * @param tableId The id of the table
+     * @param state The state of the game
+     */
+    public SessionInfo(long token, int sessionId, long tableId, GameState state) {
+        mToken = token;
+        mSessionId = sessionId;
+        mTableId = tableId;
+        mState = state;
+        mDelta = null;
+    }
+
+    /**
+     * Creates a message with the changes since the last state the client saw.
+     * 
+     * @param token The session token of the client
+     * @param sessionId The session id of the client
+     * @param tableId The id of the table
+     * @param delta The changes the client missed
+     */
+    public SessionInfo(long token, int sessionId, long tableId, StateDelta delta) {
+        mToken = token;
+        mSessionId = sessionId;
+        mTableId = tableId;
+        mState = null;
+        mDelta = delta;
+    }
+
+    /**
+     * @return The session token
+     */
+    public long getToken() {
+        return mToken;
+    }
+
+    /**
+     * @return The session id, the owner of the piles protected by the client
+     */
+    public int getSessionId() {
+        return mSessionId;
+    }
+
+    /**
+     * @return The id of the table, sent along with each update multicast by it
+     */
+    public long getTableId() {
+        return mTableId;
+    }
+
+    /**
+     * @return The state, or null if a delta was sent
+     */
+    public GameState getState() {
+        return mState;
+    }
+
+    /**
+     * @return The delta, or null if the whole state was sent
+     */
+    public StateDelta getDelta() {
+        return mDelta;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * The changes between two versions of the game state. Only holds the piles that have changed, which makes it a lot
+ * smaller than the whole state.
+ * 
+ * @author group17
+ */
+public class StateDelta implements Serializable {
+    private static final long            serialVersionUID = 6383146092337853178L;
+    private final int                    mFromVersion;
+    private final int                    mToVersion;
+    private final HashMap<Integer, Pile> mPiles           = new HashMap<Integer, Pile>();
+    private final int                    mDefaultPileNo;
+    private final boolean                mHostStillLeft;
+    private final boolean                mIsRestarted;
+
+    /**
+     * Creates a delta that brings a state from the given version to the version of the given state.
+     * 
+     * @param state The current state
+     * @param fromVersion The version the delta applies to
+     * @param changedPiles The positions of the piles that have changed since fromVersion
+     */
+    public StateDelta(GameState state, int fromVersion, BitSet changedPiles) {
+        mFromVersion = fromVersion;
+        mToVersion = state.getVersion();
+        for (int i = changedPiles.nextSetBit(0); i >= 0; i = changedPiles.nextSetBit(i + 1)) {
+            mPiles.put(i, state.getPiles().get(i));
+        }
+        mDefaultPileNo = state.getDefaultPileNo();
+        mHostStillLeft = state.getHostStillLeft();
+        mIsRestarted = state.getIsRestarted();
+    }
+
+    /**
+     * Copies a delta, without its piles.
+     * 
+     * @param other The delta to copy
+     */
+    private StateDelta(StateDelta other) {
+        mFromVersion = other.mFromVersion;
+        mToVersion = other.mToVersion;
+        mDefaultPileNo = other.mDefaultPileNo;
+        mHostStillLeft = other.mHostStillLeft;
+        mIsRestarted = other.mIsRestarted;
+    }
+
+    /**
+     * Creates the delta as a player is sent it, with the piles protected by other players hidden and the piles the
+     * player is not looking at summarized. Face-down cards are sent as they are, see Pile.isHiddenFrom.
+     * 
+     * @param viewer The session id of the player, or Constant.PileHasNoOwner for a player that owns no pile
+     * @param subscribed The position of the pile the player is looking at, or -1 if it is not looking at any
+     * @return The delta as the player is sent it, or this delta if nothing is left out
+     * @see GameState#projectFor(int, int)
+     */
+    public StateDelta projectFor(int viewer, int subscribed) {
+        StateDelta projected = null;
+        for (Map.Entry<Integer, Pile> entry : mPiles.entrySet()) {
+            Pile p = entry.getValue();
+            Pile viewed = p == null ? null : p.viewedBy(viewer, entry.getKey() == subscribed);
+            if (viewed != p) {
+                if (projected == null) {
+                    projected = new StateDelta(this);
+                    projected.mPiles.putAll(mPiles);
+                }
+                projected.mPiles.put(entry.getKey(), viewed);
+            }
+        }
+        return projected == null ? this : projected;
+    }
+
+    /**
+     * @return The owners of the changed piles that are hidden from everyone else
+     */
+    public BitSet getHiddenOwners() {
+        BitSet owners = new BitSet();
+        for (Pile p : mPiles.values()) {
+            if (p != null && p.isHiddenFrom(Constant.PileHasNoOwner)) {
+                owners.set(p.getOwner());
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * @return The version this delta applies to
+     */
+    public int getFromVersion() {
+        return mFromVersion;
+    }
+
+    /**
+     * @return The version of the state after this delta is applied
+     */
+    public int getToVersion() {
+        return mToVersion;
+    }
+
+    /**
+     * @return The changed piles by position, a null value means the position is now empty
+     */
+    public HashMap<Integer, Pile> getPiles() {
+        return mPiles;
+    }
+
+    /**
+     * @return The number of the default pile
+     */
+    public int getDefaultPileNo() {
+        return mDefaultPileNo;
+    }
+
+    /**
+     * @return Whether the host is still in the game
+     */
+    public boolean getHostStillLeft() {
+        return mHostStillLeft;
+    }
+
+    /**
+     * @return Whether or not the game has been restarted
+     */
+    public boolean getIsRestarted() {
+        return mIsRestarted;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.game.server;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Remembers which piles changed in each of the most recent versions of the game state, so that a client that has
+ * missed some updates can be sent only what it missed. Older versions are forgotten.
+ * 
+ * @author group17
+ */
+public class StateHistory {
+    private final BitSet[] mChangedPiles;
+    private int            mOldestVersion = 0;
+    private int            mNewestVersion = 0;
+
+    /**
+     * Creates a new history.
+     * 
+     * @param capacity The number of versions to remember
+     */
+    public StateHistory(int capacity) {
+        mChangedPiles = new BitSet[capacity];
+    }
+
+    /**
+     * Forgets the versions recorded so far and starts over from a version whose history is not known, e.g. the
+     * version of a keyframe.
+     * 
+     * @param version The version to start from
+     */
+    public void startAt(int version) {
+        Arrays.fill(mChangedPiles, null);
+        mOldestVersion = version;
+        mNewestVersion = version;
+    }
+
+    /**
+     * Records the changes made in a new version.
+     * 
+     * @param version The new version, one more than the previously recorded one
+     * @param changedPiles The positions of the piles that changed
+     */
+    public void record(int version, BitSet changedPiles) {
+        int slot = version % mChangedPiles.length;
+        mChangedPiles[slot] = (BitSet) changedPiles.clone();
+        mNewestVersion = version;
+    }
+
+    /**
+     * Checks if the changes since a version are still remembered.
+     * 
+     * @param version The version
+     * @return True if changedSince can answer for the version
+     */
+    public boolean covers(int version) {
+        return version >= mOldestVersion && version <= mNewestVersion
+                && mNewestVersion - version <= mChangedPiles.length;
+    }
+
+    /**
+     * Gives the positions of all piles that have changed after the given version.
+     * 
+     * @param version The version
+     * @return The positions of the changed piles, or null if the version is too old
+     */
+    public BitSet changedSince(int version) {
+        if (!covers(version)) {
+            return null;
+        }
+        BitSet changed = new BitSet();
+        for (int v = version + 1; v <= mNewestVersion; v++) {
+            changed.or(mChangedPiles[v % mChangedPiles.length]);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.game.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Remembers earlier versions of the game so that operations can be undone and redone. Since the versions share the
+ * piles that did not change, a step only costs the piles that changed in it. The oldest steps are forgotten when there
+ * are more than the given number of them, or when the cards of the changed piles add up to more than the given
+ * number. The history can be serialized along with the state, the shared piles are then written once.
+ * 
+ * @author group17
+ */
+public class UndoHistory implements Serializable {
+    private static final long          serialVersionUID = -2306318713095717237L;
+    private final GameState[]          mStates;
+    private final int[]                mCosts;
+    private final int                  mMaxCards;
+    private int                        mNewest          = -1;
+    private int                        mSize            = 0;
+    private int                        mCards           = 0;
+    private final ArrayList<GameState> mRedoStates      = new ArrayList<GameState>();
+
+    /**
+     * Creates a new history.
+     * 
+     * @param depth The number of steps to remember
+     * @param maxCards The number of cards the remembered steps may hold
+     */
+    public UndoHistory(int depth, int maxCards) {
+        mStates = new GameState[depth];
+        mCosts = new int[depth];
+        mMaxCards = maxCards;
+    }
+
+    /**
+     * Records that an operation has been performed. What was undone before can not be redone anymore.
+     * 
+     * @param before The state before the operation
+     * @param after The state after the operation
+     */
+    public void record(GameState before, GameState after) {
+        mRedoStates.clear();
+        push(before, after);
+    }
+
+    /**
+     * @return The state the last operation would be undone to, or null if there is nothing to undo
+     */
+    public GameState peekUndo() {
+        return mSize == 0 ? null : mStates[mNewest];
+    }
+
+    /**
+     * @return The state the last undo would be redone to, or null if there is nothing to redo
+     */
+    public GameState peekRedo() {
+        return mRedoStates.isEmpty() ? null : mRedoStates.get(mRedoStates.size() - 1);
+    }
+
+    /**
+     * Takes a step back.
+     * 
+     * @param current The current state, which can be redone to afterwards
+     * @return The state to go back to, or null if there is nothing to undo
+     */
+    public GameState undo(GameState current) {
+        if (mSize == 0) {
+            return null;
+        }
+        GameState state = mStates[mNewest];
+        mCards -= mCosts[mNewest];
+        mStates[mNewest] = null;
+        mNewest = (mNewest + mStates.length - 1) % mStates.length;
+        mSize--;
+        mRedoStates.add(current);
+        return state;
+    }
+
+    /**
+     * Takes a step forward again after an undo.
+     * 
+     * @param current The current state, which can be undone to afterwards
+     * @return The state to go forward to, or null if there is nothing to redo
+     */
+    public GameState redo(GameState current) {
+        if (mRedoStates.isEmpty()) {
+            return null;
+        }
+        GameState state = mRedoStates.remove(mRedoStates.size() - 1);
+        push(current, state);
+        return state;
+    }
+
+    /**
+     * Forgets all steps.
+     */
+    public void clear() {
+        for (int i = 0; i < mStates.length; i++) {
+            mStates[i] = null;
+        }
+        mSize = 0;
+        mCards = 0;
+        mRedoStates.clear();
+    }
+
+    /**
+     * @return The number of steps that can be undone
+     */
+    public int getUndoSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of cards held by the steps that can be undone
+     */
+    public int getCards() {
+        return mCards;
+    }
+
+    /**
+     * Remembers a step, forgetting the oldest ones if there are too many or they hold too many cards.
+     * 
+     * @param before The state to go back to
+     * @param after The state after the step
+     */
+    private void push(GameState before, GameState after) {
+        int cost = cost(before, after);
+        mNewest = (mNewest + 1) % mStates.length;
+        if (mSize == mStates.length) {
+            mCards -= mCosts[mNewest]; // The oldest step is overwritten
+        } else {
+            mSize++;
+        }
+        mStates[mNewest] = before;
+        mCosts[mNewest] = cost;
+        mCards += cost;
+        while (mCards > mMaxCards && mSize > 1) {
+            int oldest = (mNewest - mSize + 1 + mStates.length) % mStates.length;
+            mCards -= mCosts[oldest];
+            mStates[oldest] = null;
+            mSize--;
+        }
+    }
+
+    /**
+     * Counts the cards in the piles of a state that are not shared with the state after it, plus one for every such
+     * pile.
+     * 
+     * @param before The earlier state
+     * @param after The later state
+     * @return The cost of remembering the earlier state
+     */
+    private static int cost(GameState before, GameState after) {
+        List<Pile> piles = before.getPiles();
+        List<Pile> newer = after.getPiles();
+        int cost = 0;
+        for (int i = 0; i < piles.size(); i++) {
+            Pile p = piles.get(i);
+            if (p != null && p != newer.get(i)) {
+                cost += p.getSize() + 1;
+            }
+        }
+        return cost;
+    }
+}
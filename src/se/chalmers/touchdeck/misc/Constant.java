@@ -66,6 +66,78 @@ public class Constant {
                                                                                // table
     public static final int    TableTextWeight         = 2;                   // The weight of the pilename on the
                                                                                // table
+    public static final int    StateHistorySize        = 64;                  // The number of versions of the state
+                                                                               // remembered for clients resuming
+                                                                               // their session
+    public static final int    ReconnectAttempts       = 10;                  // The number of times to try to reach
+                                                                               // the host after losing the connection
+    public static final int    ReconnectDelay          = 1000;                // The time between attempts to reach
+                                                                               // the host
+    public static final int    DiscoveryPort           = 4244;                // The port the HostAnnouncer listens
+                                                                               // to for probes
+    public static final int    DiscoveryTimeout        = 1500;                // The time spent searching for games
+                                                                               // on the network
+    public static final int    DiscoveryProbeInterval  = 300;                 // The time between probes when
+                                                                               // searching for games
+    public static final int    DiscoveryPacketSize     = 512;                 // The maximum size of a probe or an
+                                                                               // answer
+    public static final int    MulticastPort           = 4245;                // The port updates are multicast to
+    public static final int    MaxDatagramSize         = 16384;               // Updates bigger than this are not
+                                                                               // multicast but sent to each client
+    public static final int    MetricsPort             = 4246;                // The loopback port the metrics can be
+                                                                               // read from
+    public static final int    LogBufferSize           = 1024;                // The number of log messages kept
+    public static final int    LogLevel                = 4;                   // The lowest level logged, 4 is info,
+                                                                               // debug builds and the server may set
+                                                                               // it lower
+    public static final int    PileHasNoOwner          = 0;                   // Indicates that a pile has no owner,
+                                                                               // session ids start at 1
+    public static final int    UndoDepth               = 32;                  // The number of operations that can be
+                                                                               // undone
+    public static final int    UndoMaxCards            = 2048;                // The number of cards the undo history
+                                                                               // may keep copies of, older steps are
+                                                                               // forgotten beyond it
+    public static final int    ReplayKeyframeInterval  = 60000;               // The time between the keyframes of a
+                                                                               // recorded game, a replay seeks from
+                                                                               // the closest one
+    public static final int    ConnectionThreads       = 32;                  // The number of threads handling the
+                                                                               // connections to the players on
+                                                                               // Android, each open connection keeps
+                                                                               // one busy and more are turned away
+    public static final int    PoolThreadIdleTime      = 60000;               // The time a pooled connection thread
+                                                                               // is kept when idle
+    public static final int    AckTimeout              = 5000;                // The time to wait for the host to
+                                                                               // answer an operation before asking it
+                                                                               // for the missed updates
+    public static final int    OpRate                  = 20;                  // The number of operations a client
+                                                                               // may perform each second over time
+    public static final int    OpBurst                 = 40;                  // The number of operations a client
+                                                                               // may perform at once before its
+                                                                               // operations are rejected
+    public static final int    MaxPendingOps           = 16;                  // The number of operations waiting for
+                                                                               // the game beyond which more
+                                                                               // operations are rejected
+    public static final int    PingInterval            = 2000;                // The time between measurements of the
+                                                                               // round-trip time to the host
+    public static final int    MaxCoalesceWindow       = 8000;                // The longest time in microseconds
+                                                                               // updates are held back to be sent
+                                                                               // together when operations come
+                                                                               // quickly
+    public static final int    MaxQueuedMessages       = 256;                 // The number of messages that may wait
+                                                                               // to be written to a client before it
+                                                                               // is dropped as too far behind
+    public static final int    DrainTimeout            = 1000;                // The longest time to wait for the
+                                                                               // last messages to be written to the
+                                                                               // clients when a table is closed
+
+    /**
+     * Flags.
+     */
+
+    public static final boolean UseMulticast          = false;               // Whether updates are multicast to the
+                                                                               // clients on the local network
+    public static final boolean RecordGames           = false;               // Whether the games hosted are recorded
+                                                                               // so that they can be replayed
 
     /**
      * Strings.
@@ -74,17 +146,11 @@ public class Constant {
     public static final String MainDeckName            = "deck";              // The name of the starting pile
     public static final String IntentPileViewPileId    = "pileId";            // The identifier for the pile id of the
                                                                                // pile that the pileview will display
-    public static final String IntentPileViewIp        = "pileViewIp";        // The identifier for the ip of the
-                                                                               // device
-                                                                               // in PileView
-    public static final String IntentTableViewState    = "state";             // The identifier for the state of the
-                                                                               // table
     public static final String IntentTableViewIP       = "ipAddr";            // The identifier for the ip of the
                                                                                // device
                                                                                // in TableView
-    public static final String IntentTableViewHost     = "host";              // The identifier for the user being the
-                                                                               // host in TableView
-    public static final String PileHasNoOwner          = "noOwner";           // Indicates that a pile has no owner
+    public static final String IntentTableViewHandle   = "table";             // The identifier for the handle of the
+                                                                               // table hosted on the device
     public static final String BackOfCardImage         = "rb";                // The name of the image for the back of
                                                                                // a
                                                                                // card
@@ -97,5 +163,19 @@ public class Constant {
                                                                                // pile
     public static final String DefaultIpAddress        = "192.168.0.1";       // The default ip address to show when
                                                                                // entering the ip address
+    public static final String DiscoveryMagic          = "TouchDeck";         // Marks the packets of the discovery
+                                                                               // protocol
+    public static final String DiscoveryProbe          = "probe";             // Identifies a probe looking for games
+    public static final String DiscoveryAnswer         = "host";              // Identifies an answer from a game
+    public static final String BroadcastAddress        = "255.255.255.255";   // The address probes are sent to when
+                                                                               // searching for games
+    public static final String DefaultTableName        = "TouchDeck";         // The name announced for a table when
+                                                                               // none is given
+    public static final String IntentTableViewPort     = "port";              // The identifier for the port of the
+                                                                               // game to join in TableView
+    public static final String MulticastGroup          = "239.255.42.42";     // The multicast group updates are sent
+                                                                               // to
+    public static final String RecordingSuffix         = ".tdr";              // The file name ending of recorded
+                                                                               // games
 
 }
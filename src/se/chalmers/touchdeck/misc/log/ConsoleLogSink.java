@@ -0,0 +1,52 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.log;
+
+import java.io.PrintStream;
+
+/**
+ * Writes log messages to a stream, e.g. the console when running outside of Android.
+ * 
+ * @author group17
+ */
+public class ConsoleLogSink implements LogSink {
+    private final PrintStream mOut;
+
+    /**
+     * Creates a sink writing to standard error.
+     */
+    public ConsoleLogSink() {
+        this(System.err);
+    }
+
+    /**
+     * @param out The stream to write to
+     */
+    public ConsoleLogSink(PrintStream out) {
+        mOut = out;
+    }
+
+    @Override
+    public void write(int level, String tag, String message) {
+        mOut.println(Logger.levelName(level) + "/" + tag + ": " + message);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.log;
+
+import java.io.PrintWriter;
+
+/**
+ * A ring of preallocated log entries, written to a sink by a background thread. Adding an entry only fills in a slot,
+ * the message is put together from its parts when it is written. When the writer falls behind the oldest entries are
+ * dropped rather than making the logging thread wait. The latest entries are kept after being written, so that they
+ * can be dumped after something has gone wrong.
+ * 
+ * @author group17
+ */
+public class LogBuffer implements Runnable {
+    private final Entry[]     mEntries;
+    private final Entry[]     mBatch;
+    private long              mNext    = 0;
+    private long              mWritten = 0;
+    private long              mDropped = 0;
+    private volatile LogSink  mSink;
+
+    /**
+     * A slot in the ring.
+     */
+    private static class Entry {
+        private long   mTime;
+        private int    mLevel;
+        private String mTag;
+        private String mMessage;
+        private Object mArg1;
+        private Object mArg2;
+
+        /**
+         * Copies another entry into this one.
+         * 
+         * @param other The entry to copy
+         */
+        private void copy(Entry other) {
+            mTime = other.mTime;
+            mLevel = other.mLevel;
+            mTag = other.mTag;
+            mMessage = other.mMessage;
+            mArg1 = other.mArg1;
+            mArg2 = other.mArg2;
+        }
+
+        /**
+         * @return The message with its arguments appended
+         */
+        private String format() {
+            if (mArg1 == null && mArg2 == null) {
+                return mMessage;
+            }
+            StringBuilder sb = new StringBuilder(mMessage);
+            if (mArg1 != null) {
+                sb.append(mArg1);
+            }
+            if (mArg2 != null) {
+                sb.append(mArg2);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Creates a new LogBuffer.
+     * 
+     * @param capacity The number of entries kept
+     * @param sink The sink to write the entries to
+     */
+    public LogBuffer(int capacity, LogSink sink) {
+        mEntries = new Entry[capacity];
+        mBatch = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mEntries[i] = new Entry();
+            mBatch[i] = new Entry();
+        }
+        mSink = sink;
+    }
+
+    /**
+     * @param sink The sink to write the entries to from now on
+     */
+    public void setSink(LogSink sink) {
+        mSink = sink;
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest one if the ring is full.
+     * 
+     * @param level The level of the entry
+     * @param tag The tag of the entry
+     * @param message The message
+     * @param arg1 Appended to the message when it is written, may be null
+     * @param arg2 Appended after arg1 when the message is written, may be null
+     */
+    public synchronized void add(int level, String tag, String message, Object arg1, Object arg2) {
+        Entry e = mEntries[(int) (mNext % mEntries.length)];
+        e.mTime = System.currentTimeMillis();
+        e.mLevel = level;
+        e.mTag = tag;
+        e.mMessage = message;
+        e.mArg1 = arg1;
+        e.mArg2 = arg2;
+        mNext++;
+        if (mNext - mWritten == 1) {
+            // The writer may be waiting for an entry
+            notify();
+        }
+    }
+
+    /**
+     * @return The number of entries dropped because the writer fell behind
+     */
+    public synchronized long getDropped() {
+        return mDropped;
+    }
+
+    /**
+     * Writes entries to the sink as they are added.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            int count;
+            synchronized (this) {
+                while (mWritten == mNext) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mNext - mWritten > mEntries.length) {
+                    mDropped += mNext - mWritten - mEntries.length;
+                    mWritten = mNext - mEntries.length;
+                }
+                count = (int) (mNext - mWritten);
+                for (int i = 0; i < count; i++) {
+                    mBatch[i].copy(mEntries[(int) ((mWritten + i) % mEntries.length)]);
+                }
+                mWritten = mNext;
+            }
+            // Format outside the lock so that logging threads never wait for it
+            for (int i = 0; i < count; i++) {
+                Entry e = mBatch[i];
+                mSink.write(e.mLevel, e.mTag, e.format());
+                e.mArg1 = null;
+                e.mArg2 = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries still kept in the ring, oldest first.
+     * 
+     * @param out The writer to write to
+     */
+    public void dump(PrintWriter out) {
+        Entry[] entries;
+        synchronized (this) {
+            int count = (int) Math.min(mNext, mEntries.length);
+            entries = new Entry[count];
+            for (int i = 0; i < count; i++) {
+                entries[i] = new Entry();
+                entries[i].copy(mEntries[(int) ((mNext - count + i) % mEntries.length)]);
+            }
+        }
+        for (Entry e : entries) {
+            out.println(e.mTime + " " + Logger.levelName(e.mLevel) + "/" + e.mTag + ": " + e.format());
+        }
+        out.flush();
+    }
+}
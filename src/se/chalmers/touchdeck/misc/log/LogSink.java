@@ -0,0 +1,39 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.log;
+
+/**
+ * Somewhere log messages are written once they have been formatted.
+ * 
+ * @author group17
+ */
+public interface LogSink {
+
+    /**
+     * Writes a log message.
+     * 
+     * @param level The level of the message, one of the levels in Logger
+     * @param tag The tag of the message
+     * @param message The formatted message
+     */
+    public void write(int level, String tag, String message);
+}
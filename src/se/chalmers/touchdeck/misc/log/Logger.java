@@ -0,0 +1,239 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.log;
+
+import java.io.PrintWriter;
+
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * Logging for TouchDeck. Messages below the current level are discarded at once, other messages are added to a
+ * LogBuffer and written to the sink by a background thread. Instead of building a message by concatenation, pass the
+ * parts as arguments; they are only turned into strings when the message is written.
+ * 
+ * @author group17
+ */
+public class Logger {
+    public static final int       VERBOSE = 2;
+    public static final int       DEBUG   = 3;
+    public static final int       INFO    = 4;
+    public static final int       WARN    = 5;
+    public static final int       ERROR   = 6;
+
+    private static volatile int   sLevel  = Constant.LogLevel;
+    private static LogBuffer      sBuffer = null;
+
+    /**
+     * Not to be instantiated.
+     */
+    private Logger() {
+    }
+
+    /**
+     * @param level The lowest level of the messages to log
+     */
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    /**
+     * @param level A level
+     * @return Whether messages of the level are logged
+     */
+    public static boolean isLoggable(int level) {
+        return level >= sLevel;
+    }
+
+    /**
+     * Sets where the messages are written, the Android log by default and the console when not running on Android.
+     * 
+     * @param sink The sink
+     */
+    public static void setSink(LogSink sink) {
+        buffer().setSink(sink);
+    }
+
+    /**
+     * Writes the latest messages, including the ones already written to the sink.
+     * 
+     * @param out The writer to write to
+     */
+    public static void dump(PrintWriter out) {
+        buffer().dump(out);
+    }
+
+    /**
+     * Logs a debug message.
+     * 
+     * @param tag The tag
+     * @param message The message
+     */
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, null, null);
+    }
+
+    /**
+     * Logs a debug message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg Appended to the message
+     */
+    public static void d(String tag, String message, Object arg) {
+        log(DEBUG, tag, message, arg, null);
+    }
+
+    /**
+     * Logs a debug message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg1 Appended to the message
+     * @param arg2 Appended after arg1
+     */
+    public static void d(String tag, String message, Object arg1, Object arg2) {
+        log(DEBUG, tag, message, arg1, arg2);
+    }
+
+    /**
+     * Logs an info message.
+     * 
+     * @param tag The tag
+     * @param message The message
+     */
+    public static void i(String tag, String message) {
+        log(INFO, tag, message, null, null);
+    }
+
+    /**
+     * Logs an info message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg Appended to the message
+     */
+    public static void i(String tag, String message, Object arg) {
+        log(INFO, tag, message, arg, null);
+    }
+
+    /**
+     * Logs an info message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg1 Appended to the message
+     * @param arg2 Appended after arg1
+     */
+    public static void i(String tag, String message, Object arg1, Object arg2) {
+        log(INFO, tag, message, arg1, arg2);
+    }
+
+    /**
+     * Logs an error message.
+     * 
+     * @param tag The tag
+     * @param message The message
+     */
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, null, null);
+    }
+
+    /**
+     * Logs an error message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg Appended to the message
+     */
+    public static void e(String tag, String message, Object arg) {
+        log(ERROR, tag, message, arg, null);
+    }
+
+    /**
+     * Logs an error message.
+     * 
+     * @param tag The tag
+     * @param message The start of the message
+     * @param arg1 Appended to the message
+     * @param arg2 Appended after arg1
+     */
+    public static void e(String tag, String message, Object arg1, Object arg2) {
+        log(ERROR, tag, message, arg1, arg2);
+    }
+
+    /**
+     * @param level A level
+     * @return The one letter name of the level
+     */
+    static String levelName(int level) {
+        switch (level) {
+        case VERBOSE:
+            return "V";
+        case DEBUG:
+            return "D";
+        case INFO:
+            return "I";
+        case WARN:
+            return "W";
+        default:
+            return "E";
+        }
+    }
+
+    /**
+     * Adds a message to the buffer, if its level is logged.
+     */
+    private static void log(int level, String tag, String message, Object arg1, Object arg2) {
+        if (level >= sLevel) {
+            buffer().add(level, tag, message, arg1, arg2);
+        }
+    }
+
+    /**
+     * @return The buffer, started the first time it is needed
+     */
+    private static synchronized LogBuffer buffer() {
+        if (sBuffer == null) {
+            sBuffer = new LogBuffer(Constant.LogBufferSize, defaultSink());
+            Thread thread = new Thread(sBuffer, "Logger");
+            // Don't keep the process alive just for the logging
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return sBuffer;
+    }
+
+    /**
+     * Gives the sink to use until another one is set. The Android sink is looked up by name, so that the game server
+     * can be built and run on a plain JVM without it.
+     * 
+     * @return A sink writing to the Android log when running on Android, and to the console otherwise
+     */
+    private static LogSink defaultSink() {
+        try {
+            Class.forName("android.util.Log");
+            return (LogSink) Class.forName(Logger.class.getPackage().getName() + ".AndroidLogSink").newInstance();
+        } catch (Exception e) {
+            return new ConsoleLogSink();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.metrics;
+
+/**
+ * A number that is counted up or set, e.g. the number of times something has happened or the current size of
+ * something.
+ * 
+ * @author group17
+ */
+public class Counter {
+    private long mValue = 0;
+
+    /**
+     * Adds one.
+     */
+    public synchronized void increment() {
+        mValue++;
+    }
+
+    /**
+     * @param n The amount to add
+     */
+    public synchronized void add(long n) {
+        mValue += n;
+    }
+
+    /**
+     * @param value The value to set
+     */
+    public synchronized void set(long value) {
+        mValue = value;
+    }
+
+    /**
+     * @return The value
+     */
+    public synchronized long get() {
+        return mValue;
+    }
+
+    /**
+     * @return The value as a string
+     */
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
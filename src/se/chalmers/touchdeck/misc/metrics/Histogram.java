@@ -0,0 +1,153 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.metrics;
+
+/**
+ * A histogram of long values with a fixed number of logarithmic buckets, each power of two split into eight. Recording
+ * is constant time and the memory use does not grow, at the cost of values only being known to within about 12%.
+ * 
+ * @author group17
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private final long[]     mCounts         = new long[(Long.SIZE - SUB_BUCKET_BITS + 1)
+                                                     * SUB_BUCKETS];
+    private long             mCount          = 0;
+    private long             mSum            = 0;
+    private long             mMin            = Long.MAX_VALUE;
+    private long             mMax            = 0;
+
+    /**
+     * Records a value.
+     * 
+     * @param value The value to record, negative values are recorded as 0
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * @return The number of values recorded
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The mean of the values recorded, or 0 if there are none
+     */
+    public synchronized double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * @return The largest value recorded
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Gives the value below which a percentage of the recorded values fall.
+     * 
+     * @param percentile The percentage, between 0 and 100
+     * @return The value, rounded up to the end of its bucket but never above the largest value recorded
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100.0 * mCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= wanted) {
+                return Math.min(highestValueIn(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public synchronized void reset() {
+        java.util.Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    /**
+     * @return A one line summary of the histogram
+     */
+    @Override
+    public synchronized String toString() {
+        if (mCount == 0) {
+            return "count=0";
+        }
+        return "count=" + mCount + " min=" + mMin + " p50=" + getValueAtPercentile(50) + " p90="
+                + getValueAtPercentile(90) + " p99=" + getValueAtPercentile(99) + " max=" + mMax
+                + " mean=" + Math.round(getMean());
+    }
+
+    /**
+     * Gives the bucket of a value. Values below SUB_BUCKETS get a bucket each, larger values share a bucket with the
+     * values that have the same highest bit and the same SUB_BUCKET_BITS bits below it.
+     * 
+     * @param value The value, not negative
+     * @return The index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gives the largest value that falls in a bucket.
+     * 
+     * @param bucket The index of the bucket
+     * @return The value
+     */
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A named set of histograms, counters and round-trip times. Every registry that has not been removed is included
+ * when dumping all metrics, e.g. through the MetricsEndpoint.
+ * 
+ * @author group17
+ */
+public class Metrics {
+    private static final ArrayList<Metrics> sRegistries  = new ArrayList<Metrics>();
+    private final String                    mName;
+    private final TreeMap<String, Object>   mMetrics     = new TreeMap<String, Object>();
+
+    /**
+     * Creates a new registry and adds it to the ones dumped.
+     * 
+     * @param name The name of the registry
+     */
+    public Metrics(String name) {
+        mName = name;
+        synchronized (sRegistries) {
+            sRegistries.add(this);
+        }
+    }
+
+    /**
+     * Gives the histogram with the given name, creating it if needed. Callers on hot paths should keep the histogram
+     * rather than looking it up every time.
+     * 
+     * @param name The name of the histogram
+     * @return The histogram
+     */
+    public synchronized Histogram histogram(String name) {
+        Object o = mMetrics.get(name);
+        if (!(o instanceof Histogram)) {
+            o = new Histogram();
+            mMetrics.put(name, o);
+        }
+        return (Histogram) o;
+    }
+
+    /**
+     * Gives the counter with the given name, creating it if needed.
+     * 
+     * @param name The name of the counter
+     * @return The counter
+     */
+    public synchronized Counter counter(String name) {
+        Object o = mMetrics.get(name);
+        if (!(o instanceof Counter)) {
+            o = new Counter();
+            mMetrics.put(name, o);
+        }
+        return (Counter) o;
+    }
+
+    /**
+     * Gives the round-trip time with the given name, creating it if needed.
+     * 
+     * @param name The name of the round-trip time
+     * @return The round-trip time
+     */
+    public synchronized RoundTripTime roundTrip(String name) {
+        Object o = mMetrics.get(name);
+        if (!(o instanceof RoundTripTime)) {
+            o = new RoundTripTime();
+            mMetrics.put(name, o);
+        }
+        return (RoundTripTime) o;
+    }
+
+    /**
+     * Removes a histogram, counter or round-trip time, e.g. the ones of a client that has left.
+     * 
+     * @param name The name of the histogram or counter
+     */
+    public synchronized void remove(String name) {
+        mMetrics.remove(name);
+    }
+
+    /**
+     * Stops including this registry when dumping all metrics.
+     */
+    public void unregister() {
+        synchronized (sRegistries) {
+            sRegistries.remove(this);
+        }
+    }
+
+    /**
+     * Writes all histograms, counters and round-trip times of this registry, one per line.
+     * 
+     * @param out The writer to write to
+     */
+    public synchronized void dump(PrintWriter out) {
+        out.println("# " + mName);
+        for (Map.Entry<String, Object> entry : mMetrics.entrySet()) {
+            out.println(entry.getKey() + " " + entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the metrics of all registries.
+     * 
+     * @param out The writer to write to
+     */
+    public static void dumpAll(PrintWriter out) {
+        ArrayList<Metrics> registries;
+        synchronized (sRegistries) {
+            registries = new ArrayList<Metrics>(sRegistries);
+        }
+        for (Metrics m : registries) {
+            m.dump(out);
+        }
+        out.flush();
+    }
+}
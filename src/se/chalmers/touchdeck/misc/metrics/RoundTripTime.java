@@ -0,0 +1,75 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.misc.metrics;
+
+/**
+ * The smoothed round-trip time of a connection and how much it varies, kept the way TCP does: each new sample moves
+ * the average an eighth of the way and the variation a quarter of the way towards it.
+ * 
+ * @author group17
+ */
+public class RoundTripTime {
+    private long mRtt     = -1;
+    private long mJitter  = 0;
+    private long mSamples = 0;
+
+    /**
+     * Adds a measured round trip.
+     * 
+     * @param micros The time in microseconds
+     */
+    public synchronized void sample(long micros) {
+        if (mRtt < 0) {
+            mRtt = micros;
+            mJitter = micros / 2;
+        } else {
+            mJitter += (Math.abs(mRtt - micros) - mJitter) / 4;
+            mRtt += (micros - mRtt) / 8;
+        }
+        mSamples++;
+    }
+
+    /**
+     * @return The smoothed round-trip time in microseconds, or -1 if nothing has been measured
+     */
+    public synchronized long getRtt() {
+        return mRtt;
+    }
+
+    /**
+     * @return The smoothed variation of the round-trip time in microseconds
+     */
+    public synchronized long getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * @return The round-trip time and its variation as a string
+     */
+    @Override
+    public synchronized String toString() {
+        if (mSamples == 0) {
+            return "samples=0";
+        }
+        return "samples=" + mSamples + " rtt=" + mRtt + " jitter=" + mJitter;
+    }
+}
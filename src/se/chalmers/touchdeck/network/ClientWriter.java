@@ -0,0 +1,154 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.concurrent.RejectedExecutionException;
+
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.misc.metrics.Histogram;
+
+/**
+ * Writes the messages to one client in the order they are queued. The writing is done on a thread of its own while
+ * there is something to write, so that a slow or stalled client does not hold up the updates to the others. A client
+ * that falls more than Constant.MaxQueuedMessages messages behind is dropped by closing its socket; it can resume its
+ * session when it reconnects.
+ * 
+ * @author group17
+ */
+public class ClientWriter implements Runnable {
+    private final Socket                        mSocket;
+    private final Histogram                     mWriteTimes;
+    private final LinkedList<SerializedMessage> mQueue   = new LinkedList<SerializedMessage>();
+    private boolean                             mWriting = false;
+    private boolean                             mClosed  = false;
+
+    /**
+     * Creates a new ClientWriter.
+     * 
+     * @param socket The socket connected to the client
+     * @param writeTimes Where to record the time each write takes, or null
+     */
+    public ClientWriter(Socket socket, Histogram writeTimes) {
+        mSocket = socket;
+        mWriteTimes = writeTimes;
+    }
+
+    /**
+     * Queues a message to be written to the client.
+     * 
+     * @param message The message
+     * @return Whether the message was queued, false if the client has been dropped
+     */
+    public boolean offer(SerializedMessage message) {
+        boolean tooFarBehind;
+        synchronized (this) {
+            if (mClosed) {
+                return false;
+            }
+            tooFarBehind = mQueue.size() >= Constant.MaxQueuedMessages;
+            if (tooFarBehind) {
+                close();
+            } else {
+                mQueue.add(message);
+                if (mWriting) {
+                    return true;
+                }
+                mWriting = true;
+            }
+        }
+        if (tooFarBehind) {
+            Logger.e("ClientWriter", "Dropping a client that is too far behind: ", mSocket.getRemoteSocketAddress());
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                Logger.e("ClientWriter", "Error closing socket");
+            }
+            return false;
+        }
+        String name = "Writer " + mSocket.getRemoteSocketAddress();
+        try {
+            ConnectionExecutor.get().execute(this, name);
+        } catch (RejectedExecutionException e) {
+            // Writing stops when the queue is empty, so it may have a thread of its own
+            new Thread(this, name).start();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued messages until there are no more.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            SerializedMessage message;
+            synchronized (this) {
+                message = mClosed ? null : mQueue.poll();
+                if (message == null) {
+                    mWriting = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                message.writeTo(mSocket.getOutputStream());
+            } catch (IOException e) {
+                Logger.e("ClientWriter", "Error sending to ", mSocket.getRemoteSocketAddress());
+            }
+            if (mWriteTimes != null) {
+                mWriteTimes.record((System.nanoTime() - start) / 1000);
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued messages to be written.
+     * 
+     * @param timeout The longest time to wait in milliseconds
+     */
+    public synchronized void awaitWritten(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        long left;
+        while (mWriting && (left = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops writing to the client, dropping the messages that have not been written.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        mQueue.clear();
+        notifyAll();
+    }
+}
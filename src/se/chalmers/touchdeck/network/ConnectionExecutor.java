@@ -0,0 +1,132 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.network;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import se.chalmers.touchdeck.misc.Constant;
+
+/**
+ * Decides which threads the connections to the players are handled on. The handlers block while reading and writing,
+ * so each connection needs a thread of its own while it is open: on Android they share a bounded pool, which turns
+ * away connections when all its threads are busy, and a server can give each connection a virtual thread if the JVM
+ * has them, or a platform thread with a small stack.
+ * 
+ * @author group17
+ */
+public abstract class ConnectionExecutor {
+    private static volatile ConnectionExecutor sExecutor = boundedPool(Constant.ConnectionThreads);
+
+    /**
+     * Runs a task handling a connection.
+     * 
+     * @param task The task
+     * @param name The name of the task, given to its thread where possible
+     * @throws RejectedExecutionException If there is no thread for the task
+     */
+    public abstract void execute(Runnable task, String name);
+
+    /**
+     * @return The executor used for the connections, a bounded pool by default
+     */
+    public static ConnectionExecutor get() {
+        return sExecutor;
+    }
+
+    /**
+     * Sets the executor used for the connections from now on.
+     * 
+     * @param executor The executor
+     */
+    public static void set(ConnectionExecutor executor) {
+        sExecutor = executor;
+    }
+
+    /**
+     * Creates an executor that starts a platform thread for each task.
+     * 
+     * @param stackSize The stack size of the threads in bytes, or 0 for the default of the platform
+     * @return The executor
+     */
+    public static ConnectionExecutor platformThreads(final long stackSize) {
+        return new ConnectionExecutor() {
+            @Override
+            public void execute(Runnable task, String name) {
+                new Thread(null, task, name, stackSize).start();
+            }
+        };
+    }
+
+    /**
+     * Creates an executor that runs the tasks on a pool of threads. The threads are started when needed and stop when
+     * they have been idle for a while. A connection keeps its thread busy until it is closed, so a task that comes when
+     * all the threads are busy is rejected rather than left waiting for one: the number of threads bounds the number
+     * of connections handled at once.
+     * 
+     * @param threads The number of threads
+     * @return The executor
+     */
+    public static ConnectionExecutor boundedPool(int threads) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, Constant.PoolThreadIdleTime,
+                TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+        pool.allowCoreThreadTimeOut(true);
+        return new ConnectionExecutor() {
+            @Override
+            public void execute(Runnable task, String name) {
+                pool.execute(task);
+            }
+        };
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread for each task. Virtual threads are looked up at runtime, since
+     * the code is built for JVMs that do not have them.
+     * 
+     * @return The executor, or null if the JVM has no virtual threads
+     */
+    public static ConnectionExecutor virtualThreads() {
+        final Method ofVirtual;
+        final Method setName;
+        final Method start;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            setName = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+        } catch (Exception e) {
+            return null;
+        }
+        return new ConnectionExecutor() {
+            @Override
+            public void execute(Runnable task, String name) {
+                try {
+                    start.invoke(setName.invoke(ofVirtual.invoke(null), name), task);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not start a virtual thread", e);
+                }
+            }
+        };
+    }
+}
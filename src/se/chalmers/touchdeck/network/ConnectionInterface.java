@@ -25,7 +25,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 
-import android.util.Log;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
 
 /**
  * Used to set up a single connection.
@@ -35,7 +36,9 @@ import android.util.Log;
 public abstract class ConnectionInterface implements Runnable {
     private final String mIpAddr;
     private final int    mPort;
+    private final String mTag;
     private Socket       mSocket;
+    private int          mAttempts = 1;
 
     /**
      * Create a new Connection Object for the given ip and port.
@@ -46,18 +49,46 @@ public abstract class ConnectionInterface implements Runnable {
     public ConnectionInterface(String ipAddr, int port) {
         mIpAddr = ipAddr;
         mPort = port;
+        mTag = "ConInt " + port;
+    }
+
+    /**
+     * Sets the number of times to try to connect before giving up, waiting Constant.ReconnectDelay between attempts.
+     * 
+     * @param attempts The number of attempts
+     */
+    public void setAttempts(int attempts) {
+        mAttempts = attempts;
     }
 
     @Override
     public void run() {
-        try {
-            InetAddress serverAddr = InetAddress.getByName(mIpAddr);
-            mSocket = new Socket(serverAddr, mPort);
-            Log.d("ConInt " + mPort, "Client socket setup at " + mIpAddr + ":" + mPort);
-            send(mSocket);
-        } catch (IOException e1) {
-            Log.e("ConInt " + mPort, "Error setting up client" + mIpAddr + e1.getMessage());
+        for (int attempt = 1; attempt <= mAttempts; attempt++) {
+            try {
+                InetAddress serverAddr = InetAddress.getByName(mIpAddr);
+                mSocket = new Socket(serverAddr, mPort);
+                Logger.d(mTag, "Client socket setup at ", mIpAddr);
+                send(mSocket);
+                return;
+            } catch (IOException e1) {
+                Logger.e(mTag, "Error setting up client at ", mIpAddr);
+                Logger.d(mTag, "Cause: ", e1);
+            }
+            if (attempt < mAttempts) {
+                try {
+                    Thread.sleep(Constant.ReconnectDelay);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
         }
+        failed();
+    }
+
+    /**
+     * Called when no connection could be set up. Does nothing by default.
+     */
+    public void failed() {
     }
 
     /**
@@ -84,7 +115,7 @@ public abstract class ConnectionInterface implements Runnable {
                 mSocket.close();
             }
         } catch (IOException e) {
-            Log.e("ConInt " + mPort, "Error closing socket");
+            Logger.e(mTag, "Error closing socket");
         }
     }
 }
@@ -0,0 +1,63 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.HashMap;
+
+import se.chalmers.touchdeck.game.server.Pile;
+import se.chalmers.touchdeck.game.server.StateDelta;
+
+/**
+ * Reads updates from a source anyone on the network can write to, e.g. the multicast group. Only the classes an
+ * update is made of are read, anything else is refused before it is created.
+ * 
+ * @author group17
+ */
+public class DeltaInputStream extends ObjectInputStream {
+    private static final String[] Allowed = { StateDelta.class.getName(), Pile.class.getName(),
+            HashMap.class.getName(), Integer.class.getName(), Number.class.getName() };
+
+    /**
+     * Creates a stream reading from the given stream.
+     * 
+     * @param in The stream to read from
+     * @throws IOException If the stream header could not be read
+     */
+    public DeltaInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        for (String name : Allowed) {
+            if (name.equals(desc.getName())) {
+                return super.resolveClass(desc);
+            }
+        }
+        throw new InvalidClassException(desc.getName(), "Not part of an update");
+    }
+}
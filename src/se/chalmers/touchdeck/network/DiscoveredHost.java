@@ -0,0 +1,114 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+/**
+ * A game found on the local network.
+ * 
+ * @author group17
+ */
+public class DiscoveredHost implements Comparable<DiscoveredHost> {
+    private final String mIpAddr;
+    private final String mTableName;
+    private final int    mPlayers;
+    private final int    mPort;
+    private long         mRoundTripTime;
+
+    /**
+     * Creates a new DiscoveredHost.
+     * 
+     * @param ipAddr The ip address of the host
+     * @param tableName The name of the table
+     * @param players The number of players at the table
+     * @param port The port the game listens to
+     * @param roundTripTime The time it took for the host to answer, in milliseconds
+     */
+    public DiscoveredHost(String ipAddr, String tableName, int players, int port, long roundTripTime) {
+        mIpAddr = ipAddr;
+        mTableName = tableName;
+        mPlayers = players;
+        mPort = port;
+        mRoundTripTime = roundTripTime;
+    }
+
+    /**
+     * @return The ip address of the host
+     */
+    public String getIpAddr() {
+        return mIpAddr;
+    }
+
+    /**
+     * @return The name of the table
+     */
+    public String getTableName() {
+        return mTableName;
+    }
+
+    /**
+     * @return The number of players at the table
+     */
+    public int getPlayers() {
+        return mPlayers;
+    }
+
+    /**
+     * @return The port the game listens to
+     */
+    public int getPort() {
+        return mPort;
+    }
+
+    /**
+     * @return The time it took for the host to answer, in milliseconds
+     */
+    public long getRoundTripTime() {
+        return mRoundTripTime;
+    }
+
+    /**
+     * @param roundTripTime The time it took for the host to answer, in milliseconds
+     */
+    public void setRoundTripTime(long roundTripTime) {
+        mRoundTripTime = roundTripTime;
+    }
+
+    /**
+     * Orders hosts by round trip time, fastest first.
+     * 
+     * @param other The host to compare to
+     * @return A negative number if this host answered faster
+     */
+    @Override
+    public int compareTo(DiscoveredHost other) {
+        return mRoundTripTime < other.mRoundTripTime ? -1
+                : (mRoundTripTime == other.mRoundTripTime ? 0 : 1);
+    }
+
+    /**
+     * @return A description of the host to show to the user
+     */
+    @Override
+    public String toString() {
+        return mTableName + " (" + mPlayers + " players) - " + mRoundTripTime + " ms";
+    }
+}
@@ -23,26 +23,54 @@ package se.chalmers.touchdeck.network;
 
 import java.io.Serializable;
 
+import se.chalmers.touchdeck.game.server.Ack;
 import se.chalmers.touchdeck.game.server.GameController;
 import se.chalmers.touchdeck.game.server.Operation;
+import se.chalmers.touchdeck.game.server.Operation.Op;
+import se.chalmers.touchdeck.game.server.Ping;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.metrics.Counter;
+import se.chalmers.touchdeck.misc.metrics.Metrics;
 
 /**
- * Listens to incoming connections from guiControllers, and handles their requests for operations.
+ * Listens to incoming connections from guiControllers, and handles their requests for operations. Each connection may
+ * only perform so many operations a second; the operations of a client going faster are rejected right away rather
+ * than held back, as holding them would stop reading from its connection, and so are its pings. Operations are also
+ * rejected while the game is too far behind with the operations of all the clients.
  * 
  * @author group17
  */
 public class GameListener extends ListenerInterface {
+    private static int           sOpRate  = Constant.OpRate;
+    private static int           sOpBurst = Constant.OpBurst;
+
     private final GameController mGameController;
+    private final Counter        mThrottled;
+    private final Counter        mBusy;
 
     /**
      * Creates a new game listener.
      * 
      * @param gc The associated GameController
      * @param port The port to listen to
+     * @param metrics Where to count the operations rejected
      */
-    public GameListener(GameController gc, int port) {
-        super(true, port);
+    public GameListener(GameController gc, int port, Metrics metrics) {
+        super(true, port, sOpRate, sOpBurst);
         mGameController = gc;
+        mThrottled = metrics.counter("ops.throttled");
+        mBusy = metrics.counter("ops.busy");
+    }
+
+    /**
+     * Sets how many operations each client may perform, for the listeners created from now on.
+     * 
+     * @param rate The number of operations each second over time
+     * @param burst The number of operations at once
+     */
+    public static void setRateLimit(int rate, int burst) {
+        sOpRate = rate;
+        sOpBurst = burst;
     }
 
     /**
@@ -56,7 +84,45 @@ public class GameListener extends ListenerInterface {
         if (s instanceof Operation) {
             Operation op = (Operation) s;
             op.setIpAddr(ipAddr);
+            if (isLimited(op) && mGameController.getPendingOps() >= Constant.MaxPendingOps) {
+                mBusy.increment();
+                mGameController.reject(op, Ack.Reason.busy);
+                return;
+            }
             mGameController.performOperation(op);
+        } else if (s instanceof Ping) {
+            mGameController.ping((Ping) s);
+        }
+    }
+
+    /**
+     * Joining and leaving are never rejected, everything else counts against the limit.
+     * 
+     * @param s The object sent from the client
+     * @return Whether the request is limited
+     */
+    @Override
+    public boolean isLimited(Serializable s) {
+        if (s instanceof Operation) {
+            Op op = ((Operation) s).getOp();
+            return op != Op.connect && op != Op.disconnect && op != Op.resume;
+        }
+        return true;
+    }
+
+    /**
+     * Rejects an operation from a client that has used up its operations for now. Pings are dropped.
+     * 
+     * @param s The object sent from the client
+     * @param ipAddr The ip address of the client
+     */
+    @Override
+    public void throttled(Serializable s, String ipAddr) {
+        if (s instanceof Operation) {
+            Operation op = (Operation) s;
+            op.setIpAddr(ipAddr);
+            mThrottled.increment();
+            mGameController.reject(op, Ack.Reason.throttled);
         }
     }
 }
@@ -24,6 +24,7 @@ package se.chalmers.touchdeck.network;
 import java.net.Socket;
 
 import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.Session;
 
 /**
  * Sets up a single connection from the GameController to the GuiController.
@@ -32,16 +33,18 @@ import se.chalmers.touchdeck.game.server.GameController;
  */
 public class GameToGuiConnection extends ConnectionInterface {
     private final GameController mGameController;
+    private final Session        mSession;
 
     /**
      * Creates a new GameToGuiConnection Object.
      * 
-     * @param ipAddr The ip address that will be connected
+     * @param session The session of the client that will be connected
      * @param port The port to connect to
      * @param gameController The associated GameController
      */
-    public GameToGuiConnection(String ipAddr, int port, GameController gameController) {
-        super(ipAddr, port);
+    public GameToGuiConnection(Session session, int port, GameController gameController) {
+        super(session.getIpAddr(), port);
+        mSession = session;
         mGameController = gameController;
     }
 
@@ -52,8 +55,7 @@ public class GameToGuiConnection extends ConnectionInterface {
      */
     @Override
     public void send(Socket socket) {
-        mGameController.addSocket(socket);
-        mGameController.sendUpdatedState();
+        mGameController.sessionConnected(mSession, socket);
     }
 
     /**
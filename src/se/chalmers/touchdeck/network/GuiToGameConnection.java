@@ -34,6 +34,7 @@ import se.chalmers.touchdeck.game.server.Operation.Op;
  */
 public class GuiToGameConnection extends ConnectionInterface {
     private final GuiController mGuiController;
+    private final boolean       mResume;
 
     /**
      * Creates a new GuiToGameConnection object.
@@ -43,8 +44,21 @@ public class GuiToGameConnection extends ConnectionInterface {
      * @param guiController The associated GuiController
      */
     public GuiToGameConnection(String ipAddr, int port, GuiController guiController) {
+        this(ipAddr, port, guiController, false);
+    }
+
+    /**
+     * Creates a new GuiToGameConnection object.
+     * 
+     * @param ipAddr The ip address it will connect to
+     * @param port The port it will connect to
+     * @param guiController The associated GuiController
+     * @param resume Whether to resume the previous session instead of joining as a new client
+     */
+    public GuiToGameConnection(String ipAddr, int port, GuiController guiController, boolean resume) {
         super(ipAddr, port);
         mGuiController = guiController;
+        mResume = resume;
     }
 
     /**
@@ -55,10 +69,19 @@ public class GuiToGameConnection extends ConnectionInterface {
     @Override
     public void send(Socket socket) {
         mGuiController.setSocket(socket);
-        Operation operation = new Operation(Op.connect);
+        Operation operation = mResume ? mGuiController.createResumeOperation() : new Operation(
+                Op.connect);
         mGuiController.sendOperation(operation);
     }
 
+    /**
+     * Tell the GuiController that the host could not be reached.
+     */
+    @Override
+    public void failed() {
+        mGuiController.connectionFailed();
+    }
+
     /**
      * End the connection.
      */
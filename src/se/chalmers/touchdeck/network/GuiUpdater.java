@@ -24,7 +24,11 @@ package se.chalmers.touchdeck.network;
 import java.io.Serializable;
 
 import se.chalmers.touchdeck.game.client.GuiController;
+import se.chalmers.touchdeck.game.server.Ack;
 import se.chalmers.touchdeck.game.server.GameState;
+import se.chalmers.touchdeck.game.server.Ping;
+import se.chalmers.touchdeck.game.server.SessionInfo;
+import se.chalmers.touchdeck.game.server.StateDelta;
 
 /**
  * Listens to updates sent over the network from the GameController. Notifies the GuiController of the updated state.
@@ -32,6 +36,7 @@ import se.chalmers.touchdeck.game.server.GameState;
  * @author group17
  */
 public class GuiUpdater extends ListenerInterface {
+    private final GuiController mGuiController;
 
     /**
      * Creates a new GuiUpdater.
@@ -40,21 +45,26 @@ public class GuiUpdater extends ListenerInterface {
      * @param port The port it will listen to
      */
     public GuiUpdater(GuiController guiController, int port) {
-        super(false, port);
+        // Keep listening, the host connects again when resuming a lost session
+        super(true, port);
+        mGuiController = guiController;
         addObserver(guiController);
     }
 
     @Override
     public void handle(Serializable s, String ipAddr) {
-        if (s instanceof GameState) {
-            GameState gameState = (GameState) s;
-            if (gameState != null) {
-                setChanged();
-                notifyObservers(gameState);
-            }
+        if (s instanceof GameState || s instanceof StateDelta || s instanceof SessionInfo || s instanceof Ack
+                || s instanceof Ping) {
+            setChanged();
+            notifyObservers(s);
         }
     }
 
+    @Override
+    public void connectionLost(String ipAddr) {
+        mGuiController.connectionLost();
+    }
+
     @Override
     public void end(String ipAddr) {
         super.end(ipAddr);
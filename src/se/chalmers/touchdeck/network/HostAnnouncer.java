@@ -0,0 +1,138 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+
+/**
+ * Answers the probes sent by HostFinders on the local network, telling them the name of each table, the number of
+ * players and the port to connect to. The tables of a device share the port the probes are sent to, so one
+ * HostAnnouncer answers for all of them.
+ * 
+ * @author group17
+ */
+public class HostAnnouncer implements Runnable {
+    private final CopyOnWriteArrayList<Table> mTables    = new CopyOnWriteArrayList<Table>();
+    private DatagramSocket                    mSocket;
+    private volatile boolean                  mIsStopped = false;
+
+    /**
+     * A table that is announced.
+     */
+    private static class Table {
+        private final GameController mGameController;
+        private final String         mTableName;
+        private final int            mGamePort;
+
+        /**
+         * @param gameController The game to announce
+         * @param tableName The name of the table
+         * @param gamePort The port the game listens to
+         */
+        private Table(GameController gameController, String tableName, int gamePort) {
+            mGameController = gameController;
+            mTableName = tableName;
+            mGamePort = gamePort;
+        }
+    }
+
+    /**
+     * Creates a new HostAnnouncer without any tables, they are added with addTable.
+     */
+    public HostAnnouncer() {
+    }
+
+    /**
+     * Creates a new HostAnnouncer for one table.
+     * 
+     * @param gameController The game to announce
+     * @param tableName The name of the table
+     * @param gamePort The port the game listens to
+     */
+    public HostAnnouncer(GameController gameController, String tableName, int gamePort) {
+        addTable(gameController, tableName, gamePort);
+    }
+
+    /**
+     * Adds a table to announce.
+     * 
+     * @param gameController The game to announce
+     * @param tableName The name of the table
+     * @param gamePort The port the game listens to
+     */
+    public void addTable(GameController gameController, String tableName, int gamePort) {
+        mTables.add(new Table(gameController, tableName, gamePort));
+    }
+
+    @Override
+    public void run() {
+        try {
+            mSocket = new DatagramSocket(Constant.DiscoveryPort);
+        } catch (SocketException e) {
+            Logger.e("HostAnn", "Could not listen for probes on port ", Constant.DiscoveryPort);
+            return;
+        }
+        byte[] buf = new byte[Constant.DiscoveryPacketSize];
+        while (!mIsStopped) {
+            try {
+                DatagramPacket probe = new DatagramPacket(buf, buf.length);
+                mSocket.receive(probe);
+                String[] parts = new String(probe.getData(), 0, probe.getLength(), "UTF-8").split(
+                        "\\|");
+                if (parts.length != 3 || !parts[0].equals(Constant.DiscoveryMagic)
+                        || !parts[1].equals(Constant.DiscoveryProbe)) {
+                    continue;
+                }
+                for (Table table : mTables) {
+                    // Echo the nonce of the probe, so the finder can match the answer and time it
+                    String answer = Constant.DiscoveryMagic + "|" + Constant.DiscoveryAnswer + "|"
+                            + parts[2] + "|" + table.mGamePort + "|"
+                            + table.mGameController.getNumberOfClients() + "|" + table.mTableName;
+                    byte[] data = answer.getBytes("UTF-8");
+                    mSocket.send(new DatagramPacket(data, data.length, probe.getSocketAddress()));
+                }
+            } catch (IOException e) {
+                if (!mIsStopped) {
+                    Logger.e("HostAnn", "Error answering probe");
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops answering probes.
+     */
+    public void end() {
+        mIsStopped = true;
+        if (mSocket != null) {
+            mSocket.close();
+        }
+    }
+}
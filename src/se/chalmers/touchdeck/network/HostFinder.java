@@ -0,0 +1,130 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+
+/**
+ * Finds the games on the local network by broadcasting probes and collecting the answers from their HostAnnouncers.
+ * Each answer is timed, so the hosts can be ordered by round trip time.
+ * 
+ * @author group17
+ */
+public class HostFinder {
+
+    /**
+     * Searches the local network for games. Blocks for Constant.DiscoveryTimeout milliseconds, so it should not be
+     * called from the UI thread.
+     * 
+     * @return The games found, fastest first
+     */
+    public ArrayList<DiscoveredHost> find() {
+        HashMap<String, DiscoveredHost> hosts = new HashMap<String, DiscoveredHost>();
+        int numProbes = Constant.DiscoveryTimeout / Constant.DiscoveryProbeInterval;
+        long[] sentAt = new long[numProbes];
+        DatagramSocket socket = null;
+        try {
+            socket = new DatagramSocket();
+            socket.setBroadcast(true);
+            InetAddress broadcast = InetAddress.getByName(Constant.BroadcastAddress);
+            byte[] buf = new byte[Constant.DiscoveryPacketSize];
+            // Send a few probes, in case some get lost, and listen for answers in between
+            for (int i = 0; i < numProbes; i++) {
+                byte[] probe = (Constant.DiscoveryMagic + "|" + Constant.DiscoveryProbe + "|" + i)
+                        .getBytes("UTF-8");
+                sentAt[i] = System.nanoTime();
+                socket.send(new DatagramPacket(probe, probe.length, broadcast,
+                        Constant.DiscoveryPort));
+                long deadline = sentAt[i] + Constant.DiscoveryProbeInterval * 1000000L;
+                long left;
+                while ((left = (deadline - System.nanoTime()) / 1000000L) > 0) {
+                    socket.setSoTimeout((int) left);
+                    DatagramPacket answer = new DatagramPacket(buf, buf.length);
+                    try {
+                        socket.receive(answer);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+                    handleAnswer(answer, sentAt, i, hosts);
+                }
+            }
+        } catch (IOException e) {
+            Logger.e("HostFinder", "Error searching for games");
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        ArrayList<DiscoveredHost> found = new ArrayList<DiscoveredHost>(hosts.values());
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * Reads an answer from a host, keeping the fastest answer about each table. A host may answer for several tables,
+     * listening to different ports.
+     * 
+     * @param answer The packet received
+     * @param sentAt The times the probes were sent
+     * @param lastSent The index of the last probe sent
+     * @param hosts The tables found so far, by ip address and port
+     * @throws IOException If the answer could not be decoded
+     */
+    private void handleAnswer(DatagramPacket answer, long[] sentAt, int lastSent,
+            HashMap<String, DiscoveredHost> hosts) throws IOException {
+        long now = System.nanoTime();
+        String[] parts = new String(answer.getData(), 0, answer.getLength(), "UTF-8").split("\\|",
+                6);
+        if (parts.length != 6 || !parts[0].equals(Constant.DiscoveryMagic)
+                || !parts[1].equals(Constant.DiscoveryAnswer)) {
+            return;
+        }
+        try {
+            int nonce = Integer.parseInt(parts[2]);
+            if (nonce < 0 || nonce > lastSent) {
+                return;
+            }
+            long rtt = (now - sentAt[nonce]) / 1000000L;
+            String ipAddr = answer.getAddress().getHostAddress();
+            String key = ipAddr + ":" + parts[3];
+            DiscoveredHost host = hosts.get(key);
+            if (host == null) {
+                hosts.put(key, new DiscoveredHost(ipAddr, parts[5], Integer.parseInt(parts[4]),
+                        Integer.parseInt(parts[3]), rtt));
+            } else if (rtt < host.getRoundTripTime()) {
+                host.setRoundTripTime(rtt);
+            }
+        } catch (NumberFormatException e) {
+            Logger.e("HostFinder", "Malformed answer from ", answer.getAddress());
+        }
+    }
+}
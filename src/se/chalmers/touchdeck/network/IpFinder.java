@@ -26,7 +26,8 @@ import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.Enumeration;
 
-import android.util.Log;
+import se.chalmers.touchdeck.misc.log.Logger;
+
 
 /**
  * Used to get the ip of the device.
@@ -65,7 +66,7 @@ public class IpFinder {
             }
 
         } catch (SocketException se) {
-            Log.e("GuC", "Error getting ip address");
+            Logger.e("GuC", "Error getting ip address");
         }
         // If no other address found, use the loopback address
         if (mIpAddr == null) {
@@ -28,12 +28,16 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.HashMap;
 import java.util.Observable;
+import java.util.concurrent.RejectedExecutionException;
 
-import android.util.Log;
+import se.chalmers.touchdeck.misc.log.Logger;
 
 /**
  * Interface for a server connection that listens to incoming requests and sets up new threads with sockets to serve
- * these.
+ * these. Clients are known by their ip address: the host dials back to the address of a client for its updates, so
+ * there is one client per address, and a new connection from an address replaces the old one. A listener may limit
+ * how often each connection is handled; the limit is kept by the connection handler, so it can not be got around by
+ * what the client claims to be.
  * 
  * @author group17
  */
@@ -42,6 +46,9 @@ public abstract class ListenerInterface extends Observable implements Runnable {
     private ServerSocket                             mServerSocket;
     private final HashMap<String, ConnectionHandler> mHandlers = new HashMap<String, ListenerInterface.ConnectionHandler>();
     private final int                                mPort;
+    private final String                             mTag;
+    private final int                                mRate;
+    private final int                                mBurst;
 
     /**
      * Creates a new Listener.
@@ -50,8 +57,23 @@ public abstract class ListenerInterface extends Observable implements Runnable {
      * @param port The port to listen to
      */
     public ListenerInterface(boolean loopForever, int port) {
+        this(loopForever, port, 0, 0);
+    }
+
+    /**
+     * Creates a new Listener that limits how many requests each connection may make, see isLimited and throttled.
+     * 
+     * @param loopForever Whether or not it should continue to listen to incoming connections or just accept one
+     * @param port The port to listen to
+     * @param rate The number of requests each connection may make each second over time, or 0 for no limit
+     * @param burst The number of requests each connection may make at once
+     */
+    public ListenerInterface(boolean loopForever, int port, int rate, int burst) {
         mLoopForever = loopForever;
         mPort = port;
+        mTag = "ListenerInt " + port;
+        mRate = rate;
+        mBurst = burst;
     }
 
     @Override
@@ -60,25 +82,37 @@ public abstract class ListenerInterface extends Observable implements Runnable {
         // Create the "welcome" socket
         try {
             mServerSocket = new ServerSocket(mPort);
-            Log.d("ListenerInt" + mPort, "Server socket set up on port " + mPort);
+            Logger.d(mTag, "Server socket set up on port ", mPort);
         } catch (IOException e1) {
-            Log.e("ListenerInt" + mPort, "Server socket could not be set up on port " + mPort);
+            Logger.e(mTag, "Server socket could not be set up on port ", mPort);
             return;
         }
         // Accept all incoming requests to this socket and assign them a connection handler
         do {
             try {
                 Socket clientSocket = mServerSocket.accept();
-                ConnectionHandler handler = new ConnectionHandler(clientSocket);
                 String ipAddr = clientSocket.getInetAddress().toString().substring(1); // Remove a "/"
-                mHandlers.put(ipAddr, handler);
-                new Thread(handler).start();
-                Log.d("ListenerInt " + mPort, "New connection handler started: " + ipAddr);
+                ConnectionHandler handler = new ConnectionHandler(clientSocket, ipAddr);
+                ConnectionHandler old = mHandlers.put(ipAddr, handler);
+                if (old != null) {
+                    // The client has connected again, the old connection is not in use anymore
+                    old.isStopped = true;
+                    closeQuietly(old.clientSocket);
+                }
+                try {
+                    ConnectionExecutor.get().execute(handler, mTag + " " + ipAddr);
+                    Logger.d(mTag, "New connection handler started: ", ipAddr);
+                } catch (RejectedExecutionException e) {
+                    // Too many connections already, turn the client away instead of leaving it hanging
+                    Logger.e(mTag, "No thread free for the connection from ", ipAddr);
+                    mHandlers.remove(ipAddr);
+                    closeQuietly(clientSocket);
+                }
             } catch (IOException e) {
                 if (mServerSocket.isClosed()) {
-                    Log.d("ListenerInt " + mPort, "Server socket closed!");
+                    Logger.d(mTag, "Server socket closed!");
                 } else {
-                    Log.e("ListenerInt " + mPort, "Could not create client socket");
+                    Logger.e(mTag, "Could not create client socket");
                 }
                 return;
             }
@@ -95,48 +129,86 @@ public abstract class ListenerInterface extends Observable implements Runnable {
         ConnectionHandler c = mHandlers.get(ipAddr);
         mHandlers.remove(ipAddr);
         if (c == null) {
+            if (mServerSocket == null) {
+                return; // The server socket was never set up
+            }
             try {
                 mServerSocket.close();
-                Log.d("ListenerInt " + mPort, "ConnectionHandler null for : " + ipAddr
-                        + " closing server socket");
+                Logger.d(mTag, "ConnectionHandler null for : ", ipAddr, " closing server socket");
             } catch (IOException e) {
-                Log.e("ListenerInt " + mPort, "Error closing server socket");
+                Logger.e(mTag, "Error closing server socket");
             }
             return;
         }
         try {
+            // Closing the socket stops the handler from waiting for input
             c.isStopped = true;
-            c.interrupt();
             c.clientSocket.close();
-            Log.d("ListenerInt " + mPort, "Closed connection Handler: " + ipAddr);
+            Logger.d(mTag, "Closed connection Handler: ", ipAddr);
         } catch (IOException e) {
-            Log.e("ListenerInt " + mPort, "Error closing connection Handler: " + ipAddr);
+            Logger.e(mTag, "Error closing connection Handler: ", ipAddr);
         }
         if (mHandlers.size() == 0 || ipAddr.equals(IpFinder.LOOP_BACK)) {
             try {
                 mLoopForever = false;
                 mServerSocket.close();
-                Log.d("ListenerInt " + mPort, "Server Socket closed");
+                Logger.d(mTag, "Server Socket closed");
             } catch (IOException e) {
-                Log.e("ListenerInt " + mPort, "Could not create server socket");
+                Logger.e(mTag, "Could not create server socket");
             }
         }
     }
 
+    /**
+     * Closes the connection handler for a client that has come back on another address, without ending the listener.
+     * 
+     * @param ipAddr The old ip address of the client
+     */
+    public void release(String ipAddr) {
+        ConnectionHandler c = mHandlers.remove(ipAddr);
+        if (c == null) {
+            return;
+        }
+        try {
+            c.isStopped = true;
+            c.clientSocket.close();
+        } catch (IOException e) {
+            Logger.e(mTag, "Error closing connection Handler: ", ipAddr);
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     * 
+     * @param socket The socket to close
+     */
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.e(mTag, "Error closing socket");
+        }
+    }
+
     /**
      * Handles the connection from a client and takes care of its requests.
      */
-    private class ConnectionHandler extends Thread {
-        private final Socket     clientSocket;
-        private volatile boolean isStopped = false;
+    private class ConnectionHandler implements Runnable {
+        private final Socket      clientSocket;
+        private final String      ipAddr;
+        private final TokenBucket bucket;
+        private volatile boolean  isStopped = false;
 
         /**
          * Creates a new ConnectionHandler.
          * 
          * @param s The socket to handle
+         * @param ip The ip address of the client
          */
-        public ConnectionHandler(Socket s) {
+        public ConnectionHandler(Socket s, String ip) {
             clientSocket = s;
+            ipAddr = ip;
+            bucket = mRate > 0 ? new TokenBucket(mRate, mBurst) : null;
         }
 
         @Override
@@ -149,24 +221,28 @@ public abstract class ListenerInterface extends Observable implements Runnable {
                         return;
                     }
                     ois = (new ObjectInputStream(clientSocket.getInputStream()));
-                    Log.d("ListenerInt " + mPort, "InputStream created");
+                    Logger.d(mTag, "InputStream created");
                 } catch (IOException e) {
-                    Log.e("ListenerInt " + mPort, "Exiting ConnectionHandler");
+                    Logger.e(mTag, "Exiting ConnectionHandler");
+                    if (!isStopped) {
+                        connectionLost(ipAddr);
+                    }
                     return;
                 }
                 Serializable op;
                 try {
                     // Read the object and handle the operation
                     op = (Serializable) ois.readObject();
-                    String ipAddr = clientSocket.getRemoteSocketAddress().toString();
-                    ipAddr = ipAddr.substring(1, ipAddr.indexOf(":"));
-                    handle(op, ipAddr);
-                    Log.d("ListenerInt " + mPort, "Operation completed, ip : " + ipAddr + ", op : "
-                            + op.toString());
+                    if (bucket != null && isLimited(op) && !bucket.take()) {
+                        throttled(op, ipAddr);
+                    } else {
+                        handle(op, ipAddr);
+                    }
+                    Logger.d(mTag, "Operation completed from ", ipAddr);
                 } catch (IOException e) {
-                    Log.e("ListenerInt " + mPort, "Reading went wrong, IO");
+                    Logger.e(mTag, "Reading went wrong, IO");
                 } catch (ClassNotFoundException e) {
-                    Log.e("ListenerInt " + mPort, "Reading went wrong, ClassNotFound");
+                    Logger.e(mTag, "Reading went wrong, ClassNotFound");
                 }
             }
         }
@@ -179,4 +255,32 @@ public abstract class ListenerInterface extends Observable implements Runnable {
      * @param ipAddr The ip address of the client
      */
     public abstract void handle(Serializable s, String ipAddr);
+
+    /**
+     * Tells whether a request counts against the limit of its connection. All requests do by default.
+     * 
+     * @param s The object sent from the client
+     * @return Whether the request is limited
+     */
+    public boolean isLimited(Serializable s) {
+        return true;
+    }
+
+    /**
+     * Called instead of handle for a request made when its connection has used up its limit. Drops the request by
+     * default.
+     * 
+     * @param s The object sent from the client
+     * @param ipAddr The ip address of the client
+     */
+    public void throttled(Serializable s, String ipAddr) {
+    }
+
+    /**
+     * Called when the connection from a client is lost without being ended. Does nothing by default.
+     * 
+     * @param ipAddr The ip address of the client
+     */
+    public void connectionLost(String ipAddr) {
+    }
 }
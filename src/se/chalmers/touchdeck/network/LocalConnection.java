@@ -0,0 +1,92 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.chalmers.touchdeck.network;
+
+import java.io.Serializable;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.chalmers.touchdeck.game.server.GameController;
+import se.chalmers.touchdeck.game.server.Operation;
+
+/**
+ * Connects the gui of the host to the GameController running in the same process. Operations are handed straight to
+ * the game and the updates straight back to the gui, without serializing them or going through a socket. The updates
+ * are the very states and deltas published by the game, which are never changed once published.
+ * 
+ * @author group17
+ */
+public class LocalConnection extends Observable {
+    private final GameController  mGameController;
+    // Performs the operations in the order they are sent, away from the ui thread since the game writes the updates
+    // to the other clients while performing them
+    private final ExecutorService mGameThread = Executors.newSingleThreadExecutor();
+
+    /**
+     * Creates a new LocalConnection and tells the game about it, it takes the place of the connection to the client
+     * with the loop back address.
+     * 
+     * @param gameController The game running in this process
+     * @param gui The observer that is given the updates
+     */
+    public LocalConnection(GameController gameController, Observer gui) {
+        mGameController = gameController;
+        addObserver(gui);
+        gameController.setLocalConnection(this);
+    }
+
+    /**
+     * Sends an operation to the game, it is performed on the game thread.
+     * 
+     * @param op The operation
+     */
+    public void send(final Operation op) {
+        op.setIpAddr(IpFinder.LOOP_BACK);
+        if (mGameThread.isShutdown()) {
+            return;
+        }
+        mGameThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                mGameController.performOperation(op);
+            }
+        });
+    }
+
+    /**
+     * Gives an update from the game to the gui.
+     * 
+     * @param update The state, delta or session info
+     */
+    public void deliver(Serializable update) {
+        setChanged();
+        notifyObservers(update);
+    }
+
+    /**
+     * Ends the connection once the operations already sent have been performed.
+     */
+    public void end() {
+        mGameThread.shutdown();
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+import se.chalmers.touchdeck.misc.metrics.Metrics;
+
+/**
+ * Serves a text dump of all metrics, followed by the latest log messages, to anyone connecting to
+ * Constant.MetricsPort on the loopback address, e.g. with "adb forward tcp:4246 tcp:4246" followed by
+ * "nc localhost 4246". Only one endpoint is started per process.
+ * 
+ * @author group17
+ */
+public class MetricsEndpoint implements Runnable {
+    private static MetricsEndpoint sInstance = null;
+
+    /**
+     * Starts the endpoint, unless it is already running.
+     */
+    public static synchronized void start() {
+        if (sInstance == null) {
+            sInstance = new MetricsEndpoint();
+            Thread thread = new Thread(sInstance, "MetricsEndpoint");
+            // Don't keep the process alive just for the metrics
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates a new MetricsEndpoint.
+     */
+    private MetricsEndpoint() {
+    }
+
+    @Override
+    public void run() {
+        ServerSocket serverSocket;
+        try {
+            serverSocket = new ServerSocket(Constant.MetricsPort, 1, InetAddress.getByName(IpFinder.LOOP_BACK));
+        } catch (IOException e) {
+            Logger.e("Metrics", "Could not listen on port ", Constant.MetricsPort);
+            return;
+        }
+        while (true) {
+            try {
+                Socket socket = serverSocket.accept();
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                        "UTF-8"));
+                Metrics.dumpAll(out);
+                out.println("# log");
+                Logger.dump(out);
+                socket.close();
+            } catch (IOException e) {
+                Logger.e("Metrics", "Error writing metrics");
+            }
+        }
+    }
+}
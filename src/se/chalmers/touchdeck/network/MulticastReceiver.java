@@ -0,0 +1,124 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.util.Observable;
+
+import se.chalmers.touchdeck.game.client.GuiController;
+import se.chalmers.touchdeck.game.server.StateDelta;
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+
+/**
+ * Listens to the updates the GameController sends to the multicast group. Notifies the GuiController of each update
+ * received, it is up to the GuiController to notice lost updates. Anyone on the network can send to the group, so
+ * only datagrams from the host that carry the id of the table are read, and only the classes of an update are read
+ * from them.
+ * 
+ * @author group17
+ */
+public class MulticastReceiver extends Observable implements Runnable {
+    private MulticastSocket      mSocket;
+    private InetAddress          mGroup;
+    private volatile boolean     mIsStopped = false;
+    private volatile InetAddress mHost;
+    private volatile long        mTableId;
+
+    /**
+     * Creates a new MulticastReceiver.
+     * 
+     * @param guiController The associated GuiController
+     */
+    public MulticastReceiver(GuiController guiController) {
+        addObserver(guiController);
+    }
+
+    /**
+     * Sets the table whose updates are read, datagrams are ignored until it is set.
+     * 
+     * @param host The address of the host
+     * @param tableId The id of the table
+     */
+    public void setTable(InetAddress host, long tableId) {
+        mTableId = tableId;
+        mHost = host;
+    }
+
+    @Override
+    public void run() {
+        try {
+            mGroup = InetAddress.getByName(Constant.MulticastGroup);
+            mSocket = new MulticastSocket(Constant.MulticastPort);
+            mSocket.joinGroup(mGroup);
+            Logger.d("MultiRec", "Joined multicast group ", Constant.MulticastGroup);
+        } catch (IOException e) {
+            Logger.e("MultiRec", "Could not join multicast group");
+            return;
+        }
+        byte[] buf = new byte[Constant.MaxDatagramSize];
+        while (!mIsStopped) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                mSocket.receive(packet);
+                if (!packet.getAddress().equals(mHost) || packet.getLength() < 8
+                        || ByteBuffer.wrap(buf, 0, 8).getLong() != mTableId) {
+                    continue; // Not from our table
+                }
+                DeltaInputStream in = new DeltaInputStream(new ByteArrayInputStream(buf, 8, packet.getLength() - 8));
+                Object o = in.readObject();
+                if (o instanceof StateDelta) {
+                    setChanged();
+                    notifyObservers(o);
+                }
+            } catch (IOException e) {
+                if (!mIsStopped) {
+                    Logger.e("MultiRec", "Error reading datagram");
+                }
+            } catch (ClassNotFoundException e) {
+                Logger.e("MultiRec", "Reading went wrong, ClassNotFound");
+            } catch (RuntimeException e) {
+                Logger.e("MultiRec", "Malformed update: ", e);
+            }
+        }
+    }
+
+    /**
+     * Leaves the group and closes the socket.
+     */
+    public void end() {
+        mIsStopped = true;
+        if (mSocket != null) {
+            try {
+                mSocket.leaveGroup(mGroup);
+            } catch (IOException e) {
+                Logger.e("MultiRec", "Error leaving multicast group");
+            }
+            mSocket.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+
+import se.chalmers.touchdeck.misc.Constant;
+import se.chalmers.touchdeck.misc.log.Logger;
+
+/**
+ * Sends updates to all clients listening to the multicast group at once, so each update is serialized and sent only
+ * once no matter how many clients there are. Datagrams may be lost, clients that notice a gap ask for what they missed
+ * over their own connection. Each datagram starts with the id of the table, so that clients can tell the updates of
+ * their table from those of other tables on the same network.
+ * 
+ * @author group17
+ */
+public class MulticastSender {
+    private MulticastSocket mSocket;
+    private InetAddress     mGroup;
+    private final long      mTableId;
+
+    /**
+     * Creates a new MulticastSender for Constant.MulticastGroup.
+     * 
+     * @param tableId The id of the table, sent first in each datagram
+     */
+    public MulticastSender(long tableId) {
+        mTableId = tableId;
+        try {
+            mGroup = InetAddress.getByName(Constant.MulticastGroup);
+            mSocket = new MulticastSocket();
+            // Stay on the local network
+            mSocket.setTimeToLive(1);
+        } catch (IOException e) {
+            Logger.e("MultiSend", "Could not set up multicast socket");
+            mSocket = null;
+        }
+    }
+
+    /**
+     * Sends a message to the group.
+     * 
+     * @param message The message to send
+     * @return True if it was sent, false if it was too big for a datagram or could not be sent
+     */
+    public boolean send(SerializedMessage message) {
+        if (mSocket == null || message.size() + 8 > Constant.MaxDatagramSize) {
+            return false;
+        }
+        try {
+            byte[] data = ByteBuffer.allocate(message.size() + 8).putLong(mTableId).put(message.bytes()).array();
+            mSocket.send(new DatagramPacket(data, data.length, mGroup, Constant.MulticastPort));
+            return true;
+        } catch (IOException e) {
+            Logger.e("MultiSend", "Error sending datagram");
+            return false;
+        }
+    }
+
+    /**
+     * Closes the socket.
+     */
+    public void end() {
+        if (mSocket != null) {
+            mSocket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * An object serialized once, ready to be written to any number of sockets. The bytes are exactly what a new
+ * ObjectOutputStream would write for the object, so the listeners read it with an ObjectInputStream as before.
+ * 
+ * @author group17
+ */
+public class SerializedMessage {
+    private final byte[] mBytes;
+
+    /**
+     * Serializes an object.
+     * 
+     * @param s The object to serialize
+     * @throws IOException If the object could not be serialized
+     */
+    public SerializedMessage(Serializable s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(s);
+        out.close();
+        mBytes = bytes.toByteArray();
+    }
+
+    /**
+     * Writes the message to a stream in a single write.
+     * 
+     * @param out The stream to write to
+     * @throws IOException If the message could not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mBytes);
+        out.flush();
+    }
+
+    /**
+     * @return The size of the message in bytes
+     */
+    public int size() {
+        return mBytes.length;
+    }
+
+    /**
+     * @return A copy of the bytes of the message
+     */
+    public byte[] getBytes() {
+        return mBytes.clone();
+    }
+
+    /**
+     * Gives the bytes of the message without copying them, for senders within the package that promise not to
+     * change them.
+     * 
+     * @return The bytes of the message
+     */
+    byte[] bytes() {
+        return mBytes;
+    }
+}
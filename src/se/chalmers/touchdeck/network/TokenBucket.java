@@ -0,0 +1,75 @@
+/**
+ Copyright (c) 2013 Karl Engström, Sebastian Ivarsson, Jacob Lundberg, Joakim Karlsson, Alexander Persson and Fredrik Westling
+ */
+
+/**
+ This file is part of TouchDeck.
+
+ TouchDeck is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ TouchDeck is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with TouchDeck.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.chalmers.touchdeck.network;
+
+/**
+ * Limits how often something may be done. Holds up to a burst of tokens that are refilled at a steady rate, and each
+ * time takes one token.
+ * 
+ * @author group17
+ */
+public class TokenBucket {
+    private final double mTokensPerNano;
+    private final int    mBurst;
+    private double       mTokens;
+    private long         mLastRefill;
+
+    /**
+     * Creates a full bucket.
+     * 
+     * @param rate The number of tokens refilled each second
+     * @param burst The number of tokens the bucket holds
+     */
+    public TokenBucket(int rate, int burst) {
+        mTokensPerNano = rate / 1e9;
+        mBurst = burst;
+        mTokens = burst;
+        mLastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if there is one.
+     * 
+     * @return Whether a token was taken
+     */
+    public boolean take() {
+        return take(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if there is one.
+     * 
+     * @param now The current time in nanoseconds
+     * @return Whether a token was taken
+     */
+    public synchronized boolean take(long now) {
+        if (now > mLastRefill) {
+            mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * mTokensPerNano);
+            mLastRefill = now;
+        }
+        if (mTokens < 1) {
+            return false;
+        }
+        mTokens--;
+        return true;
+    }
+}